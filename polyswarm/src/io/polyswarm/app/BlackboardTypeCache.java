@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskDataException;
+
+/**
+ * Per-case cache of the artifact and attribute types PolySwarm writes, so results don't look the same handful of
+ * names up in the case db every time.
+ *
+ * All attribute types are loaded in bulk when the case opens, and the controller adds the custom types it creates.
+ * Other lookups are filled on demand on a miss. Misses are not cached, so a type created later is still found. Engine
+ * assertion types are created through getOrCreateAttributeType, under a lock, only the first time an engine appears.
+ * Each case has its own cache, so a closing case's threads can't replace or use the new case's types. A case's cache is
+ * dropped once its threads have stopped.
+ */
+public class BlackboardTypeCache {
+
+    private static final Map<Case, BlackboardTypeCache> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Case autopsyCase;
+    private final Map<String, BlackboardArtifact.Type> artifactTypes = new ConcurrentHashMap<>();
+    private final Map<String, BlackboardAttribute.Type> attributeTypes = new ConcurrentHashMap<>();
+    private final Object createLock = new Object();
+
+    private BlackboardTypeCache(Case autopsyCase) {
+        this.autopsyCase = autopsyCase;
+    }
+
+    /**
+     * Get the cache for the given case, creating it if needed
+     *
+     * @param autopsyCase open case
+     * @return cache for that case
+     */
+    public static BlackboardTypeCache getInstance(Case autopsyCase) {
+        return INSTANCES.computeIfAbsent(autopsyCase, BlackboardTypeCache::new);
+    }
+
+    /**
+     * Drop the cached types of a case. Called once the case's threads have stopped.
+     *
+     * @param autopsyCase closed case
+     */
+    public static void invalidate(Case autopsyCase) {
+        INSTANCES.remove(autopsyCase);
+    }
+
+    /**
+     * Get an artifact type by name
+     *
+     * @param name type name
+     * @return the type, or null if it doesn't exist
+     * @throws TskCoreException if the lookup fails
+     */
+    public BlackboardArtifact.Type getArtifactType(String name) throws TskCoreException {
+        BlackboardArtifact.Type type = artifactTypes.get(name);
+        if (type == null) {
+            type = autopsyCase.getSleuthkitCase().getArtifactType(name);
+            if (type != null) {
+                artifactTypes.put(name, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Get an attribute type by name
+     *
+     * @param name type name
+     * @return the type, or null if it doesn't exist
+     * @throws TskCoreException if the lookup fails
+     */
+    public BlackboardAttribute.Type getAttributeType(String name) throws TskCoreException {
+        BlackboardAttribute.Type type = attributeTypes.get(name);
+        if (type == null) {
+            type = autopsyCase.getSleuthkitCase().getAttributeType(name);
+            if (type != null) {
+                attributeTypes.put(name, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Load every attribute type in the case, so known types never need a lookup
+     *
+     * @throws TskCoreException if the types can't be read
+     */
+    public void loadAttributeTypes() throws TskCoreException {
+        for (BlackboardAttribute.Type type : autopsyCase.getSleuthkitCase().getAttributeTypes()) {
+            put(type);
+        }
+    }
+
+    /**
+     * Get an attribute type by name, creating it if it doesn't exist yet. Only the first lookup of a new type takes the
+     * lock and touches the case db.
+     *
+     * @param name type name
+     * @param valueType type of the values
+     * @param display display name for a new type
+     * @return the type
+     * @throws TskCoreException if the type can't be read or created
+     */
+    public BlackboardAttribute.Type getOrCreateAttributeType(String name, BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE valueType, String display) throws TskCoreException {
+        BlackboardAttribute.Type type = attributeTypes.get(name);
+        if (type != null) {
+            return type;
+        }
+        synchronized (createLock) {
+            type = getAttributeType(name);
+            if (type == null) {
+                try {
+                    type = autopsyCase.getSleuthkitCase().addArtifactAttributeType(name, valueType, display);
+                } catch (TskDataException ex) {
+                    // added by someone else in the meantime
+                    type = autopsyCase.getSleuthkitCase().getAttributeType(name);
+                    if (type == null) {
+                        throw new TskCoreException("Failed to create attribute type " + name, ex);
+                    }
+                }
+                put(type);
+            }
+            return type;
+        }
+    }
+
+    void put(BlackboardArtifact.Type type) {
+        if (type != null) {
+            artifactTypes.put(type.getTypeName(), type);
+        }
+    }
+
+    void put(BlackboardAttribute.Type type) {
+        if (type != null) {
+            attributeTypes.put(type.getTypeName(), type);
+        }
+    }
+}
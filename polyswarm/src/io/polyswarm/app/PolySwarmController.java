@@ -29,9 +29,25 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.polyswarm.app.datamodel.PolySwarmDb;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingHashLookup;
+import io.polyswarm.app.tasks.PendingRescan;
+import io.polyswarm.app.tasks.PendingSubmission;
+import io.polyswarm.app.tasks.PendingTask;
+import io.polyswarm.app.tasks.PendingTaskLane;
 import io.polyswarm.app.tasks.ProcessPendingTask;
+import io.polyswarm.app.tasks.ResultEventPublisher;
+import io.polyswarm.app.tasks.RiskScorer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -39,6 +55,8 @@ import java.util.logging.Logger;
 import org.netbeans.api.progress.ProgressHandle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
@@ -60,12 +78,17 @@ import org.sleuthkit.datamodel.TskDataException;
 public class PolySwarmController {
 
     private static final Logger LOGGER = Logger.getLogger(PolySwarmController.class.getName());
+    private static final long TEARDOWN_TIMEOUT_SECONDS = 30;
+    private static final int DATA_SOURCE_QUERY_IDS = 500;
+    private static final ExecutorService TEARDOWN_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("PolySwarm-Teardown-Thread-%d").setDaemon(true).build());
 
     private final Case autopsyCase;
     private final PolySwarmMarketplaceSettings apiSettings;
     private final PolySwarmDb dbInstance;
     public ProgressHandle progressHandle;
     private ListeningScheduledExecutorService dbExecutor;
+    private ProcessPendingTask pendingTaskProcessor;
     public static final String POLYSWARM_ARTIFACT_TYPE_NAME = "POLYSWARM_RESULTS";
     public static final String POLYSWARM_ARTIFACT_TYPE_DISPLAY_NAME = "PolySwarm Results";
 
@@ -100,9 +123,24 @@ public class PolySwarmController {
         this.dbInstance = PolySwarmDb.getInstance();
 
         dbExecutor = getNewDBExecutor();
+        loadBlackboardTypes(this.autopsyCase);
         createCustomArtifactType(this.autopsyCase, POLYSWARM_ARTIFACT_TYPE_NAME, POLYSWARM_ARTIFACT_TYPE_DISPLAY_NAME);
         createCustomArtifactAttributes(this.autopsyCase);
-        dbExecutor.scheduleAtFixedRate(new ProcessPendingTask(this.dbInstance, this.autopsyCase), 0, 2, TimeUnit.SECONDS);
+        pendingTaskProcessor = new ProcessPendingTask(this.dbInstance, this.autopsyCase);
+        dbExecutor.submit(pendingTaskProcessor);
+    }
+
+    /**
+     * Load the case's attribute types, including the engine assertion types of earlier results, in one query
+     *
+     * @param autopsyCase Open Case
+     */
+    private static void loadBlackboardTypes(Case autopsyCase) {
+        try {
+            BlackboardTypeCache.getInstance(autopsyCase).loadAttributeTypes();
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.WARNING, "Failed to load attribute types, they will be looked up as needed", ex);
+        }
     }
 
     /**
@@ -112,9 +150,10 @@ public class PolySwarmController {
      */
     private static void createCustomArtifactType(Case autopsyCase, String name, String display) {
         try {
-            if (autopsyCase.getSleuthkitCase().getArtifactType(name) == null) {
+            BlackboardTypeCache typeCache = BlackboardTypeCache.getInstance(autopsyCase);
+            if (typeCache.getArtifactType(name) == null) {
                 LOGGER.log(Level.INFO, "Adding POLYSWARM_VERDICT custom artifact type");
-                autopsyCase.getSleuthkitCase().addBlackboardArtifactType(name, display);
+                typeCache.put(autopsyCase.getSleuthkitCase().addBlackboardArtifactType(name, display));
             }
         } catch (TskCoreException | TskDataException ex) {
             LOGGER.log(Level.SEVERE, "Failed to create POLYSWARM_VERDICT custom artifact type", ex);
@@ -135,54 +174,294 @@ public class PolySwarmController {
 
     public static void createCustomArtifactAttribute(Case autopsyCase, String name, TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE valueType, String display) {
         try {
-            if (autopsyCase.getSleuthkitCase().getAttributeType(name) == null) {
-                autopsyCase.getSleuthkitCase().addArtifactAttributeType(name, valueType, display);
-            }
-        } catch (TskCoreException | TskDataException ex) {
+            BlackboardTypeCache.getInstance(autopsyCase).getOrCreateAttributeType(name, valueType, display);
+        } catch (TskCoreException ex) {
             LOGGER.log(Level.SEVERE, "Failed to create custom artifact attribute type", ex);
         }
     }
 
+    /**
+     * Get the file's newest PolySwarm artifact
+     */
     public BlackboardArtifact getBlackboardArtifact(AbstractFile abstractFile) throws UnsupportedOperationException, TskCoreException {
-        List<BlackboardArtifact> artifacts = abstractFile.getArtifacts(POLYSWARM_ARTIFACT_TYPE_NAME);
+        BlackboardArtifact artifact = PendingTask.findBlackboardArtifact(autopsyCase, abstractFile, POLYSWARM_ARTIFACT_TYPE_NAME);
 
-        if (artifacts.isEmpty()) {
+        if (artifact == null) {
             throw new UnsupportedOperationException();
         }
 
-        return artifacts.get(0);
+        return artifact;
     }
 
+    /**
+     * Get the sha256 from the file's newest PolySwarm artifact that has one
+     */
     public String getSha256(AbstractFile abstractFile) throws NoCurrentCaseException, TskCoreException, UnsupportedOperationException {
-        BlackboardArtifact artifact = getBlackboardArtifact(abstractFile);
         BlackboardAttribute.Type attributeType = new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_HASH_SHA2_256);
-        BlackboardAttribute attribute = artifact.getAttribute(attributeType);
-        if (attribute != null) {
-            return attribute.getValueString();
+        BlackboardAttribute newest = null;
+        long newestId = Long.MIN_VALUE;
+        for (BlackboardArtifact artifact : abstractFile.getArtifacts(POLYSWARM_ARTIFACT_TYPE_NAME)) {
+            BlackboardAttribute attribute = artifact.getAttribute(attributeType);
+            if (attribute != null && artifact.getArtifactID() > newestId) {
+                newest = attribute;
+                newestId = artifact.getArtifactID();
+            }
+        }
+        if (newest != null) {
+            return newest.getValueString();
         } else {
             throw new UnsupportedOperationException();
         }
     }
 
-    public void reset() {
-        try {
-            // close all connections to the REST API and db.
-            dbInstance.shutdownConnections();
-            shutDownDBExecutor();
-            dbExecutor = getNewDBExecutor();
-        } catch (PolySwarmDbException ex) {
-            LOGGER.log(Level.SEVERE, "Failed to shutdown database connections.", ex); // NON-NLS
+    /**
+     * Delete historical duplicate PolySwarm artifacts of the files in a data source. Each file keeps its newest artifact
+     * with a complete result, or its newest artifact if none has one. Tagged artifacts are always kept, so the
+     * examiner's tags and comments aren't lost.
+     *
+     * @param dataSourceId object id of the data source
+     * @return number of artifacts deleted
+     *
+     * @throws TskCoreException
+     */
+    public int compactResults(long dataSourceId) throws TskCoreException {
+        BlackboardArtifact.Type artifactType = BlackboardTypeCache.getInstance(autopsyCase).getArtifactType(POLYSWARM_ARTIFACT_TYPE_NAME);
+        if (artifactType == null) {
+            return 0;
+        }
+
+        BlackboardAttribute.Type sha256Type = new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_HASH_SHA2_256);
+        Map<Long, BlackboardArtifact> kept = new HashMap<>();
+        Map<Long, Boolean> keptComplete = new HashMap<>();
+        List<BlackboardArtifact> duplicates = new ArrayList<>();
+        for (BlackboardArtifact artifact : autopsyCase.getSleuthkitCase().getBlackboardArtifacts(artifactType.getTypeID())) {
+            if (artifact.getDataSourceObjectID() != dataSourceId) {
+                continue;
+            }
+            boolean complete = artifact.getAttribute(sha256Type) != null;
+            BlackboardArtifact other = kept.get(artifact.getObjectID());
+            if (other == null) {
+                kept.put(artifact.getObjectID(), artifact);
+                keptComplete.put(artifact.getObjectID(), complete);
+                continue;
+            }
+
+            boolean otherComplete = keptComplete.get(artifact.getObjectID());
+            boolean better = complete == otherComplete ? artifact.getArtifactID() > other.getArtifactID() : complete;
+            if (better) {
+                duplicates.add(other);
+                kept.put(artifact.getObjectID(), artifact);
+                keptComplete.put(artifact.getObjectID(), complete);
+            } else {
+                duplicates.add(artifact);
+            }
+        }
+
+        int deleted = 0;
+        for (BlackboardArtifact duplicate : duplicates) {
+            if (!autopsyCase.getSleuthkitCase().getBlackboardArtifactTagsByArtifact(duplicate).isEmpty()) {
+                continue;
+            }
+            autopsyCase.getSleuthkitCase().deleteBlackboardArtifact(duplicate);
+            deleted++;
+        }
+        if (deleted > 0) {
+            IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(PolySwarmModule.getModuleName(), artifactType));
+        }
+        return deleted;
+    }
+
+    /**
+     * Add a file submission: written to the db, then queued for processing. The file is scored before taking the lock,
+     * since that reads its content.
+     *
+     * @param abstractFile file to submit
+     * @param lane priority lane
+     * @return false if the file is already pending
+     */
+    public boolean addPendingSubmission(AbstractFile abstractFile, PendingTaskLane lane) throws PolySwarmDbException {
+        return addPendingSubmissions(Collections.singletonList(abstractFile), lane) == 1;
+    }
+
+    /**
+     * Add file submissions: written to the db in one transaction, then queued for processing.
+     *
+     * @param abstractFiles files to submit
+     * @param lane priority lane
+     * @return number of submissions added, files already pending are skipped
+     */
+    public int addPendingSubmissions(List<AbstractFile> abstractFiles, PendingTaskLane lane) throws PolySwarmDbException {
+        List<PendingSubmission> pendingSubmissions = new ArrayList<>();
+        for (AbstractFile abstractFile : abstractFiles) {
+            PendingSubmission pendingSubmission = new PendingSubmission(abstractFile.getId(), "", getMd5Hash(abstractFile), false, lane);
+            pendingSubmission.setPriority(RiskScorer.score(abstractFile));
+            pendingSubmission.setFileName(abstractFile.getName());
+            pendingSubmissions.add(pendingSubmission);
+        }
+        synchronized (this) {
+            List<PendingSubmission> added = getNotPending(pendingSubmissions);
+            dbInstance.newPendingSubmissions(added);
+            enqueue(added);
+            return added.size();
+        }
+    }
+
+    /**
+     * Add a rescan: written to the db, then queued for processing.
+     *
+     * @param abstractFile file to rescan
+     * @param sha256Hash hash of the file
+     * @param lane priority lane
+     * @return false if the rescan is already pending
+     */
+    public boolean addPendingRescan(AbstractFile abstractFile, String sha256Hash, PendingTaskLane lane) throws PolySwarmDbException {
+        PendingRescan pendingRescan = new PendingRescan(abstractFile.getId(), sha256Hash, "", false, lane);
+        pendingRescan.setPriority(RiskScorer.score(abstractFile));
+        pendingRescan.setFileName(abstractFile.getName());
+        synchronized (this) {
+            if (pendingTaskProcessor.isPending(pendingRescan)) {
+                return false;
+            }
+            dbInstance.newPendingRescan(abstractFile.getId(), sha256Hash, lane, pendingRescan.getPriority());
+            return pendingTaskProcessor.enqueue(pendingRescan);
         }
     }
 
+    /**
+     * Add a hash lookup: written to the db, then queued for processing.
+     *
+     * @param abstractFile file to look up
+     * @param lane priority lane
+     * @return false if the lookup is already pending, or the file hasn't been hashed
+     */
+    public boolean addPendingHashLookup(AbstractFile abstractFile, PendingTaskLane lane) throws PolySwarmDbException {
+        return addPendingHashLookups(Collections.singletonList(abstractFile), lane) == 1;
+    }
+
+    /**
+     * Add hash lookups: written to the db in one transaction, then queued for processing.
+     *
+     * @param abstractFiles files to look up
+     * @param lane priority lane
+     * @return number of lookups added, files already pending or not hashed are skipped
+     */
+    public int addPendingHashLookups(List<AbstractFile> abstractFiles, PendingTaskLane lane) throws PolySwarmDbException {
+        List<PendingHashLookup> pendingHashLookups = new ArrayList<>();
+        for (AbstractFile abstractFile : abstractFiles) {
+            String md5Hash = getMd5Hash(abstractFile);
+            if (!md5Hash.isEmpty()) {
+                PendingHashLookup pendingHashLookup = new PendingHashLookup(abstractFile.getId(), md5Hash, false, lane);
+                pendingHashLookup.setPriority(RiskScorer.score(abstractFile));
+                pendingHashLookup.setFileName(abstractFile.getName());
+                pendingHashLookups.add(pendingHashLookup);
+            }
+        }
+        synchronized (this) {
+            List<PendingHashLookup> added = getNotPending(pendingHashLookups);
+            dbInstance.newPendingHashLookups(added);
+            enqueue(added);
+            return added.size();
+        }
+    }
+
+    /**
+     * @return the tasks that are neither pending nor repeated earlier in the list
+     */
+    private <T extends PendingTask> List<T> getNotPending(List<T> pendingTasks) {
+        Set<T> notPending = new LinkedHashSet<>();
+        for (T pendingTask : pendingTasks) {
+            if (!pendingTaskProcessor.isPending(pendingTask)) {
+                notPending.add(pendingTask);
+            }
+        }
+        return new ArrayList<>(notPending);
+    }
+
+    private void enqueue(List<? extends PendingTask> pendingTasks) {
+        for (PendingTask pendingTask : pendingTasks) {
+            pendingTaskProcessor.enqueue(pendingTask);
+        }
+    }
+
+    /**
+     * Get the md5 of a file, so submissions of identical files are collapsed
+     *
+     * @param abstractFile file to look up
+     * @return md5 of the file, or empty if it hasn't been hashed
+     */
+    private static String getMd5Hash(AbstractFile abstractFile) {
+        String md5Hash = abstractFile.getMd5Hash();
+        return md5Hash == null ? "" : md5Hash;
+    }
+
+    /**
+     * Cancel every pending task for files in a data source. The files are matched with one case db query per
+     * DATA_SOURCE_QUERY_IDS pending tasks, and the tasks are deleted from the db together. Slow, don't call it on the
+     * EDT.
+     *
+     * @param dataSourceId object id of the data source
+     * @return number of tasks cancelled
+     *
+     * @throws TskCoreException
+     */
+    public int cancelPendingTasks(long dataSourceId) throws TskCoreException {
+        List<PendingTask> pendingTasks = pendingTaskProcessor.getPendingTasks();
+        Set<Long> dataSourceFileIds = new HashSet<>();
+        for (int start = 0; start < pendingTasks.size(); start += DATA_SOURCE_QUERY_IDS) {
+            StringJoiner fileIds = new StringJoiner(", ");
+            for (PendingTask pendingTask : pendingTasks.subList(start, Math.min(pendingTasks.size(), start + DATA_SOURCE_QUERY_IDS))) {
+                fileIds.add(Long.toString(pendingTask.getAbstractFileId()));
+            }
+            dataSourceFileIds.addAll(autopsyCase.getSleuthkitCase().findAllFileIdsWhere(
+                    String.format("data_source_obj_id = %d AND obj_id IN (%s)", dataSourceId, fileIds))); // NON-NLS
+        }
+        List<PendingTask> cancelled = new ArrayList<>();
+        for (PendingTask pendingTask : pendingTasks) {
+            if (dataSourceFileIds.contains(pendingTask.getAbstractFileId())) {
+                cancelled.add(pendingTask);
+            }
+        }
+        return pendingTaskProcessor.cancel(cancelled);
+    }
+
+    /**
+     * Stop processing for this case without blocking the caller. In-flight requests are aborted and the threads are
+     * stopped now, while waiting for them and closing the db happen in the background, so the next case can open
+     * straight away. Pending tasks are already in the db and resume when this case is opened again.
+     */
+    public void reset() {
+        shutDownDBExecutor();
+        TEARDOWN_EXECUTOR.submit(this::finishTeardown);
+    }
+
     synchronized private void shutDownDBExecutor() {
+        if (pendingTaskProcessor != null) {
+            pendingTaskProcessor.shutdown();
+        }
         if (dbExecutor != null) {
             dbExecutor.shutdownNow();
-            try {
-                dbExecutor.awaitTermination(30, TimeUnit.SECONDS);
-            } catch (InterruptedException ex) {
-                LOGGER.log(Level.WARNING, "PolySwarm failed to shutdown DB Task Executor in a timely fashion.", ex);
+        }
+    }
+
+    /**
+     * Wait for this case's threads to stop, then fire the result events they queued, drop this case's cached blackboard
+     * types and close all connections to the db.
+     */
+    private void finishTeardown() {
+        try {
+            if (!dbExecutor.awaitTermination(TEARDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    || !pendingTaskProcessor.awaitTermination(TEARDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "PolySwarm failed to shutdown DB Task Executor in a timely fashion.");
             }
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "PolySwarm failed to shutdown DB Task Executor in a timely fashion.", ex);
+        }
+        ResultEventPublisher.flush();
+        BlackboardTypeCache.invalidate(autopsyCase);
+        try {
+            dbInstance.shutdownConnections();
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to shutdown database connections.", ex); // NON-NLS
         }
     }
 
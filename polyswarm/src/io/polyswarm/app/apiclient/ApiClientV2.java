@@ -30,6 +30,7 @@ import io.polyswarm.app.apiclient.v2.requests.RescanRequest;
 import io.polyswarm.app.apiclient.v2.requests.SubmitArtifactRequest;
 import io.polyswarm.app.apiclient.v2.requests.TagRequest;
 import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -61,8 +62,22 @@ public class ApiClientV2 {
      * @throws IOException, BadRequestException, RateLimitException, NotAuthorizedException, NotFoundException
      */
     public static ArtifactInstance submitFile(AbstractFile abstractFile) throws IOException, BadRequestException, RateLimitException, NotAuthorizedException, NotFoundException, ServerException {
+        return submitFile(abstractFile, null, null);
+    }
+
+    /**
+     * Submit file content to PolySwarm to scan API endpoint, reporting upload progress.
+     *
+     * @param abstractFile AbstractFile to scan
+     * @param spoolDirectory spool directory of the file's case, or null to not spool
+     * @param progressListener Receives bytes sent, may be null
+     * @return ArtifactInstance
+     *
+     * @throws IOException, BadRequestException, RateLimitException, NotAuthorizedException, NotFoundException
+     */
+    public static ArtifactInstance submitFile(AbstractFile abstractFile, File spoolDirectory, UploadProgressListener progressListener) throws IOException, BadRequestException, RateLimitException, NotAuthorizedException, NotFoundException, ServerException {
         try {
-            return new SubmitArtifactRequest(abstractFile).makeRequest();
+            return new SubmitArtifactRequest(abstractFile, spoolDirectory, progressListener).makeRequest();
         } catch (URISyntaxException ex) {
             LOGGER.log(Level.SEVERE, "Invalid API URI.", ex);
             throw new IOException(ex);
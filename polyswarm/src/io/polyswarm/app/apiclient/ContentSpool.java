@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.apiclient;
+
+import com.google.common.util.concurrent.Striped;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+
+/**
+ * Optional, size bounded spool of submission content in the case module folder.
+ *
+ * Content is decoded from the image once, and every attempt to upload it streams from the spool file. The spool file
+ * is evicted once the submission completes.
+ *
+ * Each spool file is written under its own lock, so files are spooled in parallel. The global lock only guards the
+ * budget: a write reserves its size up front and releases the reservation once the file is complete.
+ */
+public class ContentSpool {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentSpool.class.getName());
+    private static final String SPOOL_DIRECTORY_NAME = "polyswarm" + File.separator + "spool"; // NON-NLS
+    private static final String SPOOL_FILE_FORMAT = "%d.bin"; // NON-NLS
+    private static final String SPOOL_FILE_SUFFIX = ".bin"; // NON-NLS
+    private static final String PARTIAL_FILE_SUFFIX = ".part"; // NON-NLS
+    private static final Object SPOOL_LOCK = new Object();
+    private static final Striped<Lock> FILE_LOCKS = Striped.lock(64);
+    // bytes of spool files being written, guarded by SPOOL_LOCK
+    private static long reservedBytes = 0;
+
+    /**
+     * Make this all static methods.
+     */
+    private ContentSpool() {
+    }
+
+    /**
+     * Get the spool directory of a case
+     *
+     * @param autopsyCase case the spooled files belong to
+     * @return the spool directory, in the case module folder
+     */
+    public static File getSpoolDirectory(Case autopsyCase) {
+        return new File(autopsyCase.getModuleDirectory(), SPOOL_DIRECTORY_NAME);
+    }
+
+    /**
+     * Get the spooled content of a file, writing it to the spool first if needed.
+     *
+     * @param spoolDirectory spool directory of the file's case
+     * @param abstractFile file to spool
+     * @return spool file or null if spooling is disabled, over budget, or failed
+     */
+    public static File getSpooledContent(File spoolDirectory, AbstractFile abstractFile) {
+        PolySwarmMarketplaceSettings apiSettings = new PolySwarmMarketplaceSettings();
+        if (!apiSettings.isSpoolEnabled()) {
+            return null;
+        }
+
+        File spoolFile = getSpoolFile(spoolDirectory, abstractFile.getId());
+        Lock fileLock = FILE_LOCKS.get(spoolFile);
+        fileLock.lock();
+        try {
+            if (spoolFile.isFile() && spoolFile.length() == abstractFile.getSize()) {
+                LOGGER.log(Level.FINE, "Using spooled content for {0}.", abstractFile.getId());
+                return spoolFile;
+            }
+
+            synchronized (SPOOL_LOCK) {
+                if (getSpoolSize(spoolDirectory) + reservedBytes + abstractFile.getSize() > apiSettings.getSpoolMaxBytes()) {
+                    LOGGER.log(Level.INFO, "Spool is full, streaming {0} from the image.", abstractFile.getId());
+                    return null;
+                }
+                reservedBytes += abstractFile.getSize();
+            }
+            try {
+                writeSpoolFile(abstractFile, spoolFile);
+            } finally {
+                synchronized (SPOOL_LOCK) {
+                    reservedBytes -= abstractFile.getSize();
+                }
+            }
+            return spoolFile;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to spool content, streaming from the image.", ex);
+            return null;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the spooled content for a file, if there is any.
+     *
+     * @param spoolDirectory spool directory of the file's case, or null if it has none
+     * @param abstractFileId id of the spooled file
+     */
+    public static void evict(File spoolDirectory, long abstractFileId) {
+        if (spoolDirectory == null) {
+            return;
+        }
+        File spoolFile = getSpoolFile(spoolDirectory, abstractFileId);
+        Lock fileLock = FILE_LOCKS.get(spoolFile);
+        fileLock.lock();
+        try {
+            Files.deleteIfExists(spoolFile.toPath());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to evict spooled content.", ex);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Remove what a previous session left in the spool: partial files of interrupted writes, and spool files of
+     * submissions that are no longer pending. Files written since the case was opened are kept.
+     *
+     * @param spoolDirectory spool directory of the case
+     * @param pendingFileIds ids of the files with a pending submission
+     * @param openedMillis when the case was opened
+     */
+    public static void sweep(File spoolDirectory, Set<Long> pendingFileIds, long openedMillis) {
+        File[] spoolFiles = spoolDirectory.listFiles();
+        if (spoolFiles == null) {
+            return;
+        }
+        int removed = 0;
+        for (File spoolFile : spoolFiles) {
+            String name = spoolFile.getName();
+            boolean orphaned;
+            if (name.endsWith(PARTIAL_FILE_SUFFIX)) {
+                orphaned = true;
+            } else if (name.endsWith(SPOOL_FILE_SUFFIX)) {
+                orphaned = !pendingFileIds.contains(getAbstractFileId(name));
+            } else {
+                continue;
+            }
+            Lock fileLock = FILE_LOCKS.get(getSpoolFile(spoolFile));
+            fileLock.lock();
+            try {
+                if (orphaned && spoolFile.lastModified() < openedMillis && Files.deleteIfExists(spoolFile.toPath())) {
+                    removed++;
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to remove orphaned spool file.", ex);
+            } finally {
+                fileLock.unlock();
+            }
+        }
+        LOGGER.log(Level.INFO, "Removed {0} orphaned spool files.", removed);
+    }
+
+    private static void writeSpoolFile(AbstractFile abstractFile, File spoolFile) throws IOException {
+        Files.createDirectories(spoolFile.getParentFile().toPath());
+        Path partial = spoolFile.toPath().resolveSibling(spoolFile.getName() + PARTIAL_FILE_SUFFIX);
+        try (InputStream content = new ReadAheadInputStream(new ReadContentInputStream(abstractFile))) {
+            Files.copy(content, partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, spoolFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static long getSpoolSize(File spoolDirectory) {
+        long size = 0;
+        File[] spoolFiles = spoolDirectory.listFiles();
+        if (spoolFiles != null) {
+            for (File spoolFile : spoolFiles) {
+                // files being written are counted by their reservation
+                if (!spoolFile.getName().endsWith(PARTIAL_FILE_SUFFIX)) {
+                    size += spoolFile.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static File getSpoolFile(File spoolDirectory, long abstractFileId) {
+        return new File(spoolDirectory, String.format(SPOOL_FILE_FORMAT, abstractFileId));
+    }
+
+    /**
+     * @return the spool file a file in the spool directory belongs to, the file itself or the one a partial file is for
+     */
+    private static File getSpoolFile(File file) {
+        String name = file.getName();
+        return name.endsWith(PARTIAL_FILE_SUFFIX)
+                ? new File(file.getParentFile(), name.substring(0, name.length() - PARTIAL_FILE_SUFFIX.length()))
+                : file;
+    }
+
+    /**
+     * @return id of the file a spool file is for, or -1 if the name isn't a spool file name
+     */
+    private static long getAbstractFileId(String spoolFileName) {
+        try {
+            return Long.parseLong(spoolFileName.substring(0, spoolFileName.length() - SPOOL_FILE_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.apiclient;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Wraps a request entity and reports how many bytes have been written to the connection.
+ */
+public class CountingHttpEntity extends HttpEntityWrapper {
+
+    private static final long REPORT_INTERVAL_BYTES = 256 * 1024;
+    private final UploadProgressListener listener;
+
+    public CountingHttpEntity(HttpEntity wrappedEntity, UploadProgressListener listener) {
+        super(wrappedEntity);
+        this.listener = listener;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(outStream);
+        super.writeTo(countingStream);
+        countingStream.flush();
+        listener.uploadProgress(countingStream.count, getContentLength());
+    }
+
+    /**
+     * Counts bytes on their way out, notifying the listener every REPORT_INTERVAL_BYTES.
+     */
+    private class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+        private long lastReported;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written(len);
+        }
+
+        private void written(int len) {
+            if (count == 0 && len > 0) {
+                listener.uploadStarted();
+            }
+            count += len;
+            if (count - lastReported >= REPORT_INTERVAL_BYTES) {
+                lastReported = count;
+                listener.uploadProgress(count, getContentLength());
+            }
+        }
+    }
+}
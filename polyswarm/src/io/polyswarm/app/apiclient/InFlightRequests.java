@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.apiclient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.execchain.RequestAbortedException;
+
+/**
+ * Registry of the HTTP requests currently being executed, so they can be aborted from another thread.
+ *
+ * Requests are registered under the owner set on the calling thread, if any, so a single task's request can be
+ * aborted without touching the others. An aborted owner stays aborted, so a request it only gets to after the abort,
+ * eg once its upload content is spooled, fails before it is sent.
+ */
+public final class InFlightRequests {
+
+    private static final Object NO_OWNER = new Object();
+    private static final ThreadLocal<Object> OWNER = new ThreadLocal<>();
+    private static final Map<HttpRequestBase, Object> REQUESTS = new ConcurrentHashMap<>();
+    // weak, owners are dropped with their task
+    private static final Set<Object> ABORTED_OWNERS = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    /**
+     * Only static methods.
+     */
+    private InFlightRequests() {
+    }
+
+    /**
+     * Set the owner of the requests made on this thread
+     *
+     * @param owner owner to abort by
+     */
+    public static void setOwner(Object owner) {
+        OWNER.set(owner);
+    }
+
+    /**
+     * Clear the owner of the requests made on this thread
+     */
+    public static void clearOwner() {
+        OWNER.remove();
+    }
+
+    /**
+     * Execute a request, keeping it registered while it runs.
+     *
+     * @param httpclient client to execute with
+     * @param request request to execute
+     * @param responseHandler handler for the response
+     * @return the handled response
+     *
+     * @throws IOException, RequestAbortedException if the request was aborted
+     */
+    public static <T> T execute(CloseableHttpClient httpclient, HttpRequestBase request, ResponseHandler<? extends T> responseHandler) throws IOException {
+        Object owner = OWNER.get();
+        REQUESTS.put(request, owner == null ? NO_OWNER : owner);
+        try {
+            // checked after registering, so an abort can't slip in between
+            throwIfAborted();
+            return httpclient.execute(request, responseHandler);
+        } catch (IOException ex) {
+            if (request.isAborted() && !(ex instanceof RequestAbortedException)) {
+                // the abort can surface as any socket error, callers only need to know it was aborted
+                throw new RequestAbortedException("Request aborted", ex);
+            }
+            throw ex;
+        } finally {
+            REQUESTS.remove(request);
+        }
+    }
+
+    /**
+     * Fail if the owner set on this thread was aborted, for work done before a request is made
+     *
+     * @throws RequestAbortedException if the owner was aborted
+     */
+    public static void throwIfAborted() throws RequestAbortedException {
+        Object owner = OWNER.get();
+        if (owner != null && ABORTED_OWNERS.contains(owner)) {
+            throw new RequestAbortedException("Request aborted");
+        }
+    }
+
+    /**
+     * Abort the requests made for an owner, and any it makes from now on
+     *
+     * @param owner owner set when the requests were made
+     */
+    public static void abort(Object owner) {
+        ABORTED_OWNERS.add(owner);
+        for (Map.Entry<HttpRequestBase, Object> entry : REQUESTS.entrySet()) {
+            if (entry.getValue() == owner) {
+                entry.getKey().abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.apiclient;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.FileSystem;
+import org.sleuthkit.datamodel.FsContent;
+import org.sleuthkit.datamodel.Image;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+import org.sleuthkit.datamodel.TskFileRange;
+
+/**
+ * Location of a file's content inside a single-segment raw (dd) image.
+ *
+ * Only resolves when the content can be copied straight out of the image file: an uncompressed, non-resident file
+ * system file whose data runs are contiguous and cover the whole file. Everything else (E01/AFF/VMDK containers, split
+ * images, compressed, resident, sparse or fragmented content) must go through ReadContentInputStream.
+ *
+ * TSK records no layout for sparse runs, so a sparse file's runs fall short of its size. NTFS and exFAT files may also
+ * be initialized only up to a valid data length, past which reads return zeros but the image holds stale data. That
+ * length isn't exposed by the datamodel, so files on those file systems always go through TSK.
+ */
+public class RawImageRange {
+
+    private static final Logger LOGGER = Logger.getLogger(RawImageRange.class.getName());
+
+    public final File imageFile;
+    public final long offset;
+    public final long length;
+
+    private RawImageRange(File imageFile, long offset, long length) {
+        this.imageFile = imageFile;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Resolve the byte range of a file inside its raw image.
+     *
+     * @param abstractFile File to locate
+     * @return RawImageRange or null if the file is not eligible for direct reads
+     */
+    public static RawImageRange resolve(AbstractFile abstractFile) {
+        try {
+            if (abstractFile.getType() != TskData.TSK_DB_FILES_TYPE_ENUM.FS
+                    || abstractFile.isMetaFlagSet(TskData.TSK_FS_META_FLAG_ENUM.COMP)
+                    || abstractFile.getSize() <= 0
+                    || !(abstractFile instanceof FsContent)
+                    || hasInitializedSize(((FsContent) abstractFile).getFileSystem())) {
+                return null;
+            }
+
+            Content dataSource = abstractFile.getDataSource();
+            if (!(dataSource instanceof Image)) {
+                return null;
+            }
+
+            Image image = (Image) dataSource;
+            String[] paths = image.getPaths();
+            if (image.getType() != TskData.TSK_IMG_TYPE_ENUM.TSK_IMG_TYPE_RAW || paths == null || paths.length != 1) {
+                return null;
+            }
+
+            List<TskFileRange> ranges = new ArrayList<>(abstractFile.getRanges());
+            if (ranges.isEmpty()) {
+                // resident content lives in file system metadata
+                return null;
+            }
+            ranges.sort(Comparator.comparingLong(TskFileRange::getSequence));
+
+            long start = ranges.get(0).getByteStart();
+            long end = start;
+            for (TskFileRange range : ranges) {
+                if (range.getByteStart() != end) {
+                    return null;
+                }
+                end += range.getByteLen();
+            }
+
+            // the last run covers whole blocks, trim it to the file size. Runs short of it mean sparse runs were skipped.
+            File imageFile = new File(paths[0]);
+            if (end - start < abstractFile.getSize() || !imageFile.isFile()
+                    || imageFile.length() < start + abstractFile.getSize()) {
+                return null;
+            }
+
+            return new RawImageRange(imageFile, start, abstractFile.getSize());
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.FINE, "Unable to resolve image ranges, falling back to content reads.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if files on the file system can have an initialized size below their size
+     */
+    private static boolean hasInitializedSize(FileSystem fileSystem) {
+        switch (fileSystem.getFsType()) {
+            case TSK_FS_TYPE_NTFS:
+            case TSK_FS_TYPE_NTFS_DETECT:
+            case TSK_FS_TYPE_EXFAT:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.apiclient;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads ahead from a slow source (evidence content inside a disk image) on a separate I/O thread.
+ *
+ * Blocks are read into a small ring of reusable buffers, so the next block is decoded from the image while the
+ * previous one is written to the socket.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(ReadAheadInputStream.class.getName());
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+    private static final ExecutorService READ_AHEAD_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("PolySwarm-ReadAhead-Thread-%d").setDaemon(true).build());
+
+    private final InputStream source;
+    // held by the reader thread while it reads from the source, so close doesn't close it mid-read
+    private final Object sourceLock = new Object();
+    private final BlockingQueue<Block> freeBlocks;
+    private final BlockingQueue<Block> filledBlocks;
+    private Future<?> reader;
+    private Block current;
+    private volatile boolean closed;
+
+    public ReadAheadInputStream(InputStream source) {
+        this(source, DEFAULT_BLOCK_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    public ReadAheadInputStream(InputStream source, int blockSize, int bufferCount) {
+        this.source = source;
+        freeBlocks = new ArrayBlockingQueue<>(bufferCount);
+        filledBlocks = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeBlocks.add(new Block(blockSize));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int count = read(single, 0, 1);
+        return count == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int count = Math.min(length, current.length - current.position);
+        System.arraycopy(current.data, current.position, buffer, offset, count);
+        current.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.length - current.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (reader != null) {
+            reader.cancel(true);
+        }
+        synchronized (sourceLock) {
+            source.close();
+        }
+    }
+
+    /**
+     * Make sure the current block has unread data, handing spent blocks back to the reader thread.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        if (reader == null) {
+            reader = READ_AHEAD_EXECUTOR.submit(new BlockReader());
+        }
+
+        while (current == null || current.position == current.length) {
+            if (current != null) {
+                if (current.error != null) {
+                    throw current.error;
+                }
+                if (current.endOfStream) {
+                    return false;
+                }
+                current.reset();
+                freeBlocks.add(current);
+            }
+
+            try {
+                current = filledBlocks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for evidence content.");
+            }
+
+            if (current.error != null) {
+                throw current.error;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills free blocks from the source until the end of the stream, an error, or close. Each block is read under
+     * sourceLock, and close takes the same lock, so the source is never closed while a read is in progress.
+     */
+    private class BlockReader implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    Block block = freeBlocks.take();
+                    synchronized (sourceLock) {
+                        if (closed) {
+                            return;
+                        }
+                        try {
+                            block.fill(source);
+                        } catch (IOException ex) {
+                            block.error = ex;
+                        }
+                    }
+                    filledBlocks.put(block);
+                    if (block.endOfStream || block.error != null) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.log(Level.FINE, "Read ahead cancelled.");
+            }
+        }
+    }
+
+    /**
+     * A reusable buffer and how much of it holds data.
+     */
+    private static class Block {
+
+        private final byte[] data;
+        private int length;
+        private int position;
+        private boolean endOfStream;
+        private IOException error;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+
+        void fill(InputStream source) throws IOException {
+            while (length < data.length) {
+                int count = source.read(data, length, data.length - length);
+                if (count == -1) {
+                    endOfStream = true;
+                    return;
+                }
+                length += count;
+            }
+        }
+
+        void reset() {
+            length = 0;
+            position = 0;
+        }
+    }
+}
@@ -25,6 +25,7 @@ package io.polyswarm.app.apiclient.v2.requests;
 
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
 import io.polyswarm.app.apiclient.BadRequestException;
+import io.polyswarm.app.apiclient.InFlightRequests;
 import io.polyswarm.app.apiclient.NotAuthorizedException;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
 import java.io.IOException;
@@ -62,7 +63,7 @@ public class ArtifactSubmissionStatusRequest  implements Request<ArtifactInstanc
             }
 
             ResponseHandler<ArtifactInstance> responseHandler = new ArtifactInstanceResponseHandler();
-            return httpclient.execute(httpget, responseHandler);
+            return InFlightRequests.execute(httpclient, httpget, responseHandler);
         }
     }
 }
@@ -25,9 +25,17 @@ package io.polyswarm.app.apiclient.v2.requests;
 
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
 import io.polyswarm.app.apiclient.BadRequestException;
+import io.polyswarm.app.apiclient.ContentSpool;
+import io.polyswarm.app.apiclient.CountingHttpEntity;
+import io.polyswarm.app.apiclient.FileRangeBody;
+import io.polyswarm.app.apiclient.InFlightRequests;
 import io.polyswarm.app.apiclient.InputStreamKnownSizeBody;
 import io.polyswarm.app.apiclient.NotAuthorizedException;
+import io.polyswarm.app.apiclient.RawImageRange;
+import io.polyswarm.app.apiclient.ReadAheadInputStream;
+import io.polyswarm.app.apiclient.UploadProgressListener;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.logging.Level;
@@ -39,6 +47,7 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.sleuthkit.datamodel.AbstractFile;
@@ -50,9 +59,17 @@ import org.sleuthkit.datamodel.ReadContentInputStream;
 public class SubmitArtifactRequest implements Request<ArtifactInstance> {
     private final static Logger LOGGER = Logger.getLogger(SubmitArtifactRequest.class.getName());
     AbstractFile abstractFile;
+    File spoolDirectory;
+    UploadProgressListener progressListener;
 
     public SubmitArtifactRequest(AbstractFile abstractFile) {
+        this(abstractFile, null, null);
+    }
+
+    public SubmitArtifactRequest(AbstractFile abstractFile, File spoolDirectory, UploadProgressListener progressListener) {
         this.abstractFile = abstractFile;
+        this.spoolDirectory = spoolDirectory;
+        this.progressListener = progressListener;
     }
 
     @Override
@@ -70,22 +87,52 @@ public class SubmitArtifactRequest implements Request<ArtifactInstance> {
             }
 
             LOGGER.log(Level.INFO, "Submitting file with request {0}.", httppost.getRequestLine());
-            InputStreamKnownSizeBody inputStreamBody = new InputStreamKnownSizeBody(
-                    new ReadContentInputStream(abstractFile),
-                    (int) abstractFile.getSize(),
-                    ContentType.DEFAULT_BINARY,
-                    abstractFile.getName());
-
+            ContentBody fileBody = getFileBody();
+            // spooling can take a while, don't upload if the task was cancelled meanwhile
+            InFlightRequests.throwIfAborted();
             HttpEntity reqEntity = MultipartEntityBuilder.create()
                     .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
-                    .addPart("file", inputStreamBody)
+                    .addPart("file", fileBody)
                     .addTextBody("artifact-type", "file")
                     .build();
 
+            if (progressListener != null) {
+                reqEntity = new CountingHttpEntity(reqEntity, progressListener);
+            }
             httppost.setEntity(reqEntity);
 
             ResponseHandler<ArtifactInstance> responseHandler = new ArtifactInstanceResponseHandler();
-            return httpclient.execute(httppost, responseHandler);
+            return InFlightRequests.execute(httpclient, httppost, responseHandler);
+        }
+    }
+
+    /**
+     * Pick how the file content is streamed into the request.
+     *
+     * Contiguous content in a raw image is sent straight from the image file. Everything else is decoded through TSK,
+     * into the content spool when it is enabled so a retry doesn't decode it again.
+     *
+     * @return ContentBody for the file part
+     */
+    private ContentBody getFileBody() {
+        RawImageRange range = RawImageRange.resolve(abstractFile);
+        if (range != null) {
+            LOGGER.log(Level.FINE, "Streaming {0} directly from {1} at offset {2}.",
+                    new Object[]{abstractFile.getName(), range.imageFile, range.offset});
+            return new FileRangeBody(range.imageFile.toPath(), range.offset, range.length,
+                    ContentType.DEFAULT_BINARY, abstractFile.getName());
         }
+
+        File spoolFile = spoolDirectory == null ? null : ContentSpool.getSpooledContent(spoolDirectory, abstractFile);
+        if (spoolFile != null) {
+            return new FileRangeBody(spoolFile.toPath(), 0, spoolFile.length(),
+                    ContentType.DEFAULT_BINARY, abstractFile.getName());
+        }
+
+        return new InputStreamKnownSizeBody(
+                new ReadAheadInputStream(new ReadContentInputStream(abstractFile)),
+                (int) abstractFile.getSize(),
+                ContentType.DEFAULT_BINARY,
+                abstractFile.getName());
     }
 }
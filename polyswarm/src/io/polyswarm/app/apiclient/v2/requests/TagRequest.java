@@ -25,6 +25,7 @@ package io.polyswarm.app.apiclient.v2.requests;
 
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
 import io.polyswarm.app.apiclient.BadRequestException;
+import io.polyswarm.app.apiclient.InFlightRequests;
 import io.polyswarm.app.apiclient.NotAuthorizedException;
 import io.polyswarm.app.apiclient.NotFoundException;
 import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
@@ -67,7 +68,7 @@ public class TagRequest implements Request<List<Tag>> {
             }
 
             ResponseHandler<List<Tag>> responseHandler = new TagResponseHandler();
-            return httpclient.execute(httpget, responseHandler);
+            return InFlightRequests.execute(httpclient, httpget, responseHandler);
         }
     }
 }
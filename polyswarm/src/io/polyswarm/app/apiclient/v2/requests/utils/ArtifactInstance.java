@@ -44,6 +44,7 @@ public class ArtifactInstance {
     public final boolean windowClosed;
     public final String firstSeen;
     public final String lastScanned;
+    public final String rawJson;
 
     /**
      * Creates a HashSearchResponse from JSON
@@ -71,6 +72,8 @@ public class ArtifactInstance {
         id = json.getString("id");
         firstSeen = json.getString("first_seen");
         lastScanned = json.getString("last_scanned");
+        // kept whole, so the instance can be stored and read back
+        rawJson = json.toString();
     }
 
     @Override
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.contextmenu;
+
+import io.polyswarm.app.PolySwarmModule;
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingTaskLane;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Action added to right-click menu when several files are selected. Queues hash lookups for all of them in the bulk
+ * lane, in the background, since scoring the files reads their content.
+ */
+public class BulkHashLookupAction extends AbstractAction {
+
+    private static final long serivalVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(BulkHashLookupAction.class.getName());
+    private final List<AbstractFile> abstractFiles;
+
+    BulkHashLookupAction(String menuItemStr, Collection<AbstractFile> abstractFiles) {
+        super(menuItemStr);
+        this.abstractFiles = new ArrayList<>(abstractFiles);
+    }
+
+    @Override
+    @org.openide.util.NbBundle.Messages({"BulkHashLookupAction.dbError.message=Failed to record hashes in pending hashes database.",
+        "BulkHashLookupAction.messageDialog.title=PolySwarm Hash Lookup",
+        "BulkHashLookupAction.progress.name=Queueing PolySwarm Hash Lookups"})
+    public void actionPerformed(ActionEvent event) {
+        PolySwarmMarketplaceSettings apiSettings = new PolySwarmMarketplaceSettings();
+        if (apiSettings.getApiKey().isEmpty()) {
+            ApiKeyWarningDialog.show();
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            ProgressHandle progressHandle = ProgressHandle.createHandle(Bundle.BulkHashLookupAction_progress_name());
+            progressHandle.start();
+            try {
+                int added = PolySwarmModule.getController().addPendingHashLookups(abstractFiles, PendingTaskLane.BULK);
+                LOGGER.log(Level.INFO, "Added {0} bulk hash lookups.", added);
+            } catch (PolySwarmDbException | NoCurrentCaseException | TskCoreException ex) {
+                LOGGER.log(Level.SEVERE, "Error adding bulk hash lookups to sqlite db.", ex);
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
+                        Bundle.BulkHashLookupAction_dbError_message(),
+                        Bundle.BulkHashLookupAction_messageDialog_title(),
+                        JOptionPane.ERROR_MESSAGE));
+            } finally {
+                progressHandle.finish();
+            }
+        });
+    }
+}
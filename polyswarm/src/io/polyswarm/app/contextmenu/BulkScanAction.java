@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.contextmenu;
+
+import io.polyswarm.app.PolySwarmModule;
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingTaskLane;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Action added to right-click menu when several files are selected. Queues all of them for scanning in the bulk lane,
+ * in the background, since scoring the files reads their content.
+ */
+public class BulkScanAction extends AbstractAction {
+
+    private static final long serivalVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(BulkScanAction.class.getName());
+    private final List<AbstractFile> abstractFiles;
+
+    BulkScanAction(String menuItemStr, Collection<AbstractFile> abstractFiles) {
+        super(menuItemStr);
+        this.abstractFiles = new ArrayList<>(abstractFiles);
+    }
+
+    @Override
+    @org.openide.util.NbBundle.Messages({"BulkScanAction.dbError.message=Failed to record submissions in pending submissions database.",
+        "BulkScanAction.messageDialog.title=PolySwarm Scan",
+        "BulkScanAction.progress.name=Queueing PolySwarm Scans",
+        "BulkScanAction.skipped.message=%d of %d files were not queued because they were too large or already pending."})
+    public void actionPerformed(ActionEvent event) {
+        PolySwarmMarketplaceSettings apiSettings = new PolySwarmMarketplaceSettings();
+        if (apiSettings.getApiKey().isEmpty()) {
+            ApiKeyWarningDialog.show();
+            return;
+        }
+
+        if (!ScanAction.askScanPermission()) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            ProgressHandle progressHandle = ProgressHandle.createHandle(Bundle.BulkScanAction_progress_name());
+            progressHandle.start();
+            try {
+                List<AbstractFile> underSizeLimit = new ArrayList<>();
+                for (AbstractFile abstractFile : abstractFiles) {
+                    if (abstractFile.getSize() < ScanAction.MAX_SIZE) {
+                        underSizeLimit.add(abstractFile);
+                    }
+                }
+                int added = PolySwarmModule.getController().addPendingSubmissions(underSizeLimit, PendingTaskLane.BULK);
+                LOGGER.log(Level.INFO, "Added {0} bulk submissions.", added);
+                int skipped = abstractFiles.size() - added;
+                if (skipped > 0) {
+                    showMessage(String.format(Bundle.BulkScanAction_skipped_message(), skipped, abstractFiles.size()), JOptionPane.INFORMATION_MESSAGE);
+                }
+            } catch (PolySwarmDbException | NoCurrentCaseException | TskCoreException ex) {
+                LOGGER.log(Level.SEVERE, "Error adding bulk submissions to sqlite db.", ex);
+                showMessage(Bundle.BulkScanAction_dbError_message(), JOptionPane.ERROR_MESSAGE);
+            } finally {
+                progressHandle.finish();
+            }
+        });
+    }
+
+    private static void showMessage(String message, int messageType) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
+                message, Bundle.BulkScanAction_messageDialog_title(), messageType));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.contextmenu;
+
+import io.polyswarm.app.PolySwarmModule;
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import java.awt.event.ActionEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.datamodel.DataSource;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Action added to right-click menu of a data source. Deletes the historical duplicate PolySwarm results of its files,
+ * in the background.
+ */
+public class CompactResultsAction extends AbstractAction {
+
+    private static final long serivalVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(CompactResultsAction.class.getName());
+    private final DataSource dataSource;
+
+    CompactResultsAction(String menuItemStr, DataSource dataSource) {
+        super(menuItemStr);
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    @org.openide.util.NbBundle.Messages({"CompactResultsAction.progress.name=Compacting PolySwarm Results",
+        "CompactResultsAction.compacted.message=Removed %d duplicate PolySwarm results.",
+        "CompactResultsAction.error.message=Failed to compact PolySwarm results.",
+        "CompactResultsAction.messageDialog.title=PolySwarm"})
+    public void actionPerformed(ActionEvent event) {
+        CompletableFuture.runAsync(() -> {
+            ProgressHandle progressHandle = ProgressHandle.createHandle(Bundle.CompactResultsAction_progress_name());
+            progressHandle.start();
+            try {
+                int removed = PolySwarmModule.getController().compactResults(dataSource.getId());
+                LOGGER.log(Level.INFO, "Removed {0} duplicate results for data source {1}.", new Object[]{removed, dataSource.getId()});
+                showMessage(String.format(Bundle.CompactResultsAction_compacted_message(), removed), JOptionPane.INFORMATION_MESSAGE);
+            } catch (PolySwarmDbException | NoCurrentCaseException | TskCoreException ex) {
+                LOGGER.log(Level.SEVERE, "Error compacting results.", ex);
+                showMessage(Bundle.CompactResultsAction_error_message(), JOptionPane.ERROR_MESSAGE);
+            } finally {
+                progressHandle.finish();
+            }
+        });
+    }
+
+    private static void showMessage(String message, int messageType) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
+                message, Bundle.CompactResultsAction_messageDialog_title(), messageType));
+    }
+}
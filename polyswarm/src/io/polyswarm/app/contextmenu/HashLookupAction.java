@@ -23,16 +23,19 @@
  */
 package io.polyswarm.app.contextmenu;
 
-import io.polyswarm.app.datamodel.PolySwarmDb;
+import io.polyswarm.app.PolySwarmModule;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingTaskLane;
 import java.awt.event.ActionEvent;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.JOptionPane;
 import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
 
 /**
  * Adds a hash lookup action that queries polyswarm about the artifact in question Update the blackboard with results
@@ -73,10 +76,8 @@ public class HashLookupAction extends AbstractAction {
         try {
             String md5Hash = abstractFile.getMd5Hash();
             Long abstractFileId = abstractFile.getId();
-            PolySwarmDb instance = PolySwarmDb.getInstance();
-            if (!instance.isPendingHashLookup(abstractFileId)) {
-                // add hash to pending search
-                instance.newPendingHashLookup(abstractFileId, md5Hash);
+            // add hash to pending search
+            if (PolySwarmModule.getController().addPendingHashLookup(abstractFile, PendingTaskLane.INTERACTIVE)) {
                 LOGGER.log(Level.FINE, String.format("Added hash search to pending db: abstractFileId: %s, md5Hash: %s.",
                         abstractFileId.toString(),
                         md5Hash));
@@ -88,7 +89,7 @@ public class HashLookupAction extends AbstractAction {
                         JOptionPane.ERROR_MESSAGE);
             }
 
-        } catch (PolySwarmDbException ex) {
+        } catch (PolySwarmDbException | NoCurrentCaseException | TskCoreException ex) {
             LOGGER.log(Level.SEVERE, "Error adding new hash lookup to sqlite db.", ex);
             JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
                     Bundle.HashLookupAction_dbError_message(),
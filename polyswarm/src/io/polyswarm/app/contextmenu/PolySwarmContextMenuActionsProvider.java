@@ -36,6 +36,7 @@ import org.openide.util.lookup.ServiceProvider;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.autopsy.corecomponentinterfaces.ContextMenuActionsProvider;
 import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.DataSource;
 import org.sleuthkit.datamodel.TskCoreException;
 
 /**
@@ -49,27 +50,53 @@ public class PolySwarmContextMenuActionsProvider implements ContextMenuActionsPr
     @Override
     @org.openide.util.NbBundle.Messages({"PolySwarmContextMenuActionsProvider.scan.text=Scan on PolySwarm",
         "PolySwarmContextMenuActionsProvider.hash.text=Lookup Hash on PolySwarm",
-        "PolySwarmContextMenuActionsProvider.rescan.text=Rescan on PolySwarm"})
+        "PolySwarmContextMenuActionsProvider.rescan.text=Rescan on PolySwarm",
+        "PolySwarmContextMenuActionsProvider.bulkScan.text=Scan %d Files on PolySwarm",
+        "PolySwarmContextMenuActionsProvider.bulkHash.text=Lookup %d Hashes on PolySwarm",
+        "PolySwarmContextMenuActionsProvider.cancelDataSource.text=Cancel Pending PolySwarm Tasks",
+        "PolySwarmContextMenuActionsProvider.compactDataSource.text=Compact PolySwarm Results"})
     public List<Action> getActions() {
         ArrayList<Action> actions = new ArrayList<>();
 
+        for (DataSource dataSource : Utilities.actionsGlobalContext().lookupAll(DataSource.class)) {
+            actions.add(new CancelPendingTasksAction(Bundle.PolySwarmContextMenuActionsProvider_cancelDataSource_text(), dataSource));
+            actions.add(new CompactResultsAction(Bundle.PolySwarmContextMenuActionsProvider_compactDataSource_text(), dataSource));
+        }
+
         final Collection<? extends AbstractFile> selectedFiles = Utilities.actionsGlobalContext().lookupAll(AbstractFile.class);
 
+        List<AbstractFile> files = new ArrayList<>();
+        List<AbstractFile> hashedFiles = new ArrayList<>();
         for (AbstractFile abstractFile : selectedFiles) {
-
             if (abstractFile != null && abstractFile.isFile()) {
-                String scanTitle = Bundle.PolySwarmContextMenuActionsProvider_scan_text();
-                actions.add(new ScanAction(scanTitle, abstractFile));
-
+                files.add(abstractFile);
                 if (abstractFile.getMd5Hash() != null) {
-                    String hashLookupTitle = Bundle.PolySwarmContextMenuActionsProvider_hash_text();
-                    actions.add(new HashLookupAction(hashLookupTitle, abstractFile));
+                    hashedFiles.add(abstractFile);
                 }
+            }
+        }
 
-                if (isInPolyswarm(abstractFile)) {
-                    String rescanTitle = Bundle.PolySwarmContextMenuActionsProvider_rescan_text();
-                    actions.add(new RescanAction(rescanTitle, abstractFile));
-                }
+        // several files selected: one action for all of them, in the bulk lane
+        if (files.size() > 1) {
+            actions.add(new BulkScanAction(String.format(Bundle.PolySwarmContextMenuActionsProvider_bulkScan_text(), files.size()), files));
+            if (!hashedFiles.isEmpty()) {
+                actions.add(new BulkHashLookupAction(String.format(Bundle.PolySwarmContextMenuActionsProvider_bulkHash_text(), hashedFiles.size()), hashedFiles));
+            }
+            return actions;
+        }
+
+        for (AbstractFile abstractFile : files) {
+            String scanTitle = Bundle.PolySwarmContextMenuActionsProvider_scan_text();
+            actions.add(new ScanAction(scanTitle, abstractFile));
+
+            if (abstractFile.getMd5Hash() != null) {
+                String hashLookupTitle = Bundle.PolySwarmContextMenuActionsProvider_hash_text();
+                actions.add(new HashLookupAction(hashLookupTitle, abstractFile));
+            }
+
+            if (isInPolyswarm(abstractFile)) {
+                String rescanTitle = Bundle.PolySwarmContextMenuActionsProvider_rescan_text();
+                actions.add(new RescanAction(rescanTitle, abstractFile));
             }
         }
         return actions;
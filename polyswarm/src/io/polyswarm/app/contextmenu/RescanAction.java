@@ -26,9 +26,9 @@ package io.polyswarm.app.contextmenu;
 import io.polyswarm.app.PolySwarmController;
 import static io.polyswarm.app.PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME;
 import io.polyswarm.app.PolySwarmModule;
-import io.polyswarm.app.datamodel.PolySwarmDb;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingTaskLane;
 import java.awt.event.ActionEvent;
 import java.util.List;
 import java.util.logging.Level;
@@ -84,10 +84,8 @@ public class RescanAction extends AbstractAction {
             PolySwarmController controller = PolySwarmModule.getController();
             String sha256Hash = controller.getSha256(abstractFile);
             Long abstractFileId = abstractFile.getId();
-            PolySwarmDb instance = PolySwarmDb.getInstance();
-            if (!instance.isPendingRescan(abstractFileId)) {
-                // add hash to pending search
-                instance.newPendingRescan(abstractFileId, sha256Hash);
+            // add hash to pending search
+            if (controller.addPendingRescan(abstractFile, sha256Hash, PendingTaskLane.INTERACTIVE)) {
                 LOGGER.log(Level.FINE, String.format("Added rescan to pending db: abstractFileId: %s, sha256Hash: %s.",
                         abstractFileId.toString(),
                         sha256Hash));
@@ -23,16 +23,20 @@
  */
 package io.polyswarm.app.contextmenu;
 
+import io.polyswarm.app.PolySwarmModule;
 import io.polyswarm.app.datamodel.PolySwarmDb;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import io.polyswarm.app.tasks.PendingTaskLane;
 import java.awt.event.ActionEvent;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.JOptionPane;
 import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
 
 /**
  * Action added to right-click menu on an abstractFile.
@@ -41,7 +45,7 @@ public class ScanAction extends AbstractAction {
 
     private static final long serivalVersionUID = 1L;
     private static final Logger LOGGER = Logger.getLogger(ScanAction.class.getName());
-    private static final int MAX_SIZE = 33554432;
+    static final int MAX_SIZE = 33554432;
     private final AbstractFile abstractFile;
 
     ScanAction(String menuItemStr, AbstractFile abstractFile) {
@@ -83,12 +87,10 @@ public class ScanAction extends AbstractAction {
         }
 
         try {
-            PolySwarmDb instance = PolySwarmDb.getInstance();
             // TODO: here we check to see if a file was already submitted before re-submitting
             // we should allow the user to click YES/NO to force a re-submit.
-            if (!instance.isPendingSubmission(abstractFileId)) {
-                // add file info to pending submissions db
-                instance.newPendingSubmission(abstractFileId);
+            // add file info to pending submissions db
+            if (PolySwarmModule.getController().addPendingSubmission(abstractFile, PendingTaskLane.INTERACTIVE)) {
                 LOGGER.log(Level.FINE, String.format("Added submission to pending submissions db: abstractFileId: {0}.",
                         abstractFileId.toString()));
             } else {
@@ -99,7 +101,7 @@ public class ScanAction extends AbstractAction {
                         JOptionPane.ERROR_MESSAGE);
             }
 
-        } catch (PolySwarmDbException ex) {
+        } catch (PolySwarmDbException | NoCurrentCaseException | TskCoreException ex) {
             LOGGER.log(Level.SEVERE, "Error adding new submission data to sqlite db.", ex);
             JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
                     Bundle.ScanAction_dbError_message(),
@@ -112,7 +114,7 @@ public class ScanAction extends AbstractAction {
         return abstractFile.getSize() < MAX_SIZE;
     }
 
-    public boolean askScanPermission() {
+    public static boolean askScanPermission() {
         try {
             if (PolySwarmDb.getInstance().isFirstScan()) {
                 int response = JOptionPane.showConfirmDialog(WindowManager.getDefault().getMainWindow(),
@@ -26,17 +26,27 @@ package io.polyswarm.app.datamodel;
 import io.polyswarm.app.tasks.PendingHashLookup;
 import io.polyswarm.app.tasks.PendingRescan;
 import io.polyswarm.app.tasks.PendingSubmission;
+import io.polyswarm.app.tasks.PendingTask;
+import io.polyswarm.app.tasks.PendingTaskLane;
+import io.polyswarm.app.tasks.PendingTaskType;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 
 /**
  * Manage the database content and connections to the database.
@@ -49,6 +59,8 @@ public class PolySwarmDb {
 
     private final static Logger LOGGER = Logger.getLogger(PolySwarmDb.class.getName());
     private final static String FIRST_SCAN_KEY = "FIRST_SCAN";
+    // stays under SQLite's limit of 999 parameters per statement
+    private final static int MAX_DELETE_IDS = 500;
     private static PolySwarmDb instance;
     private BasicDataSource connectionPool = null;
     private final PolySwarmDbSettings dbSettings;
@@ -56,20 +68,34 @@ public class PolySwarmDb {
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
 
     /**
-     * Get the singleton instance of PolySwarmDb
+     * Get the instance of PolySwarmDb for the current case. A new one is created when the case changes.
      *
-     * @return the singleton instance of PolySwarmDb
+     * @return the instance of PolySwarmDb for the current case
      *
      * @throws PolySwarmDbException
      */
     public synchronized static PolySwarmDb getInstance() throws PolySwarmDbException {
-        if (instance == null) {
+        if (instance == null || !instance.isForCurrentCase()) {
             instance = new PolySwarmDb();
         }
 
         return instance;
     }
 
+    /**
+     * Check that this db is in the current case's module directory
+     *
+     * @return true if it is, or if there is no case open
+     */
+    private boolean isForCurrentCase() {
+        try {
+            return Case.getCurrentCaseThrows().getModuleDirectory().equals(dbSettings.getBaseDirPath());
+        } catch (NoCurrentCaseException ex) {
+            // no case to compare with, keep the last one
+            return true;
+        }
+    }
+
     /**
      * Constructor. Loads db settings.
      *
@@ -270,18 +296,50 @@ public class PolySwarmDb {
      * @throws PolySwarmDbException
      */
     public void newPendingSubmission(Long abstractFileId) throws PolySwarmDbException {
+        newPendingSubmission(abstractFileId, PendingTaskLane.INTERACTIVE, 0);
+    }
+
+    /**
+     * Add a new file to the pending_submissions table in the given priority lane
+     *
+     * @param abstractFileId Autopsy AbstractFile ID number
+     * @param lane priority lane
+     * @param priority risk score, higher is processed first
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingSubmission(Long abstractFileId, PendingTaskLane lane, int priority) throws PolySwarmDbException {
+        newPendingSubmission(abstractFileId, "", lane, priority);
+    }
+
+    /**
+     * Add a new file to the pending_submissions table in the given priority lane, with the file's md5 so submissions
+     * of identical files are collapsed
+     *
+     * @param abstractFileId Autopsy AbstractFile ID number
+     * @param md5Hash md5 of the file, or empty if unknown
+     * @param lane priority lane
+     * @param priority risk score, higher is processed first
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingSubmission(Long abstractFileId, String md5Hash, PendingTaskLane lane, int priority) throws PolySwarmDbException {
         try {
             acquireExclusiveLock();
 
             Connection conn = connect();
 
             PreparedStatement preparedStatement = null;
-            String sql = "INSERT INTO pending_submissions (abstract_file_id, submission_uuid) VALUES (?, ?)";
+            String sql = "INSERT INTO pending_submissions (abstract_file_id, submission_uuid, lane, created_at, priority, md5_hash) VALUES (?, ?, ?, ?, ?, ?)";
 
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 preparedStatement.setLong(1, abstractFileId);
                 preparedStatement.setString(2, "");
+                preparedStatement.setString(3, lane.name());
+                preparedStatement.setLong(4, System.currentTimeMillis());
+                preparedStatement.setInt(5, priority);
+                preparedStatement.setString(6, md5Hash == null ? "" : md5Hash);
                 preparedStatement.executeUpdate();
             } catch (SQLException ex) {
                 throw new PolySwarmDbException("Error adding new file to pending_submissions table.", ex); // NON-NLS
@@ -294,6 +352,53 @@ public class PolySwarmDb {
         }
     }
 
+    /**
+     * Add several files to the pending_submissions table in one transaction
+     *
+     * @param pendingSubmissions submissions to add, with their lane, priority and md5
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingSubmissions(List<PendingSubmission> pendingSubmissions) throws PolySwarmDbException {
+        if (pendingSubmissions.isEmpty()) {
+            return;
+        }
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = "INSERT INTO pending_submissions (abstract_file_id, submission_uuid, lane, created_at, priority, md5_hash) VALUES (?, ?, ?, ?, ?, ?)";
+
+            try {
+                // the pool turns auto-commit back on when the connection is returned
+                conn.setAutoCommit(false);
+                long createdAt = System.currentTimeMillis();
+                preparedStatement = conn.prepareStatement(sql);
+                for (PendingSubmission pendingSubmission : pendingSubmissions) {
+                    preparedStatement.setLong(1, pendingSubmission.getAbstractFileId());
+                    preparedStatement.setString(2, "");
+                    preparedStatement.setString(3, pendingSubmission.getLane().name());
+                    preparedStatement.setLong(4, createdAt);
+                    preparedStatement.setInt(5, pendingSubmission.getPriority());
+                    preparedStatement.setString(6, pendingSubmission.getMd5Hash() == null ? "" : pendingSubmission.getMd5Hash());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                rollback(conn);
+                throw new PolySwarmDbException("Error adding new files to pending_submissions table.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
     /**
      * Add a new file to the pending_submissions table
      *
@@ -416,11 +521,11 @@ public class PolySwarmDb {
             PendingSubmission psResult;
             PreparedStatement preparedStatement = null;
             ResultSet resultSet = null;
-            String sql = "SELECT abstract_file_id, submission_uuid, cancelled FROM pending_submissions";
+            String sql = "SELECT abstract_file_id, submission_uuid, cancelled, lane, created_at, attempts, priority, md5_hash FROM pending_submissions";
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 resultSet = preparedStatement.executeQuery();
-                if (resultSet.next()) {
+                while (resultSet.next()) {
                     psResult = getPendingSubmissionFromResultSet(resultSet);
                     pendingSubmissions.add(psResult);
                 }
@@ -480,8 +585,11 @@ public class PolySwarmDb {
             return null;
         }
 
-        return new PendingSubmission(resultSet.getLong("abstract_file_id"), resultSet.getString("submission_uuid"),
-                resultSet.getBoolean("cancelled"));
+        PendingSubmission pendingSubmission = new PendingSubmission(resultSet.getLong("abstract_file_id"), resultSet.getString("submission_uuid"),
+                resultSet.getString("md5_hash"), resultSet.getBoolean("cancelled"), PendingTaskLane.fromName(resultSet.getString("lane")));
+        pendingSubmission.setAttemptHistory(resultSet.getLong("created_at"), resultSet.getInt("attempts"));
+        pendingSubmission.setPriority(resultSet.getInt("priority"));
+        return pendingSubmission;
     }
 
     /**
@@ -493,19 +601,36 @@ public class PolySwarmDb {
      * @throws PolySwarmDbException
      */
     public void newPendingRescan(Long abstractFileId, String sha256Hash) throws PolySwarmDbException {
+        newPendingRescan(abstractFileId, sha256Hash, PendingTaskLane.INTERACTIVE, 0);
+    }
+
+    /**
+     * Add a new file to the pending_rescans table in the given priority lane
+     *
+     * @param abstractFileId Autopsy AbstractFile ID number
+     * @param sha256Hash hash of the file
+     * @param lane priority lane
+     * @param priority risk score, higher is processed first
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingRescan(Long abstractFileId, String sha256Hash, PendingTaskLane lane, int priority) throws PolySwarmDbException {
         try {
             acquireExclusiveLock();
 
             Connection conn = connect();
 
             PreparedStatement preparedStatement = null;
-            String sql = "INSERT INTO pending_rescans (abstract_file_id, sha256_hash, rescan_uuid) VALUES (?, ?, ?)";
+            String sql = "INSERT INTO pending_rescans (abstract_file_id, sha256_hash, rescan_uuid, lane, created_at, priority) VALUES (?, ?, ?, ?, ?, ?)";
 
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 preparedStatement.setLong(1, abstractFileId);
                 preparedStatement.setString(2, sha256Hash);
                 preparedStatement.setString(3, "");
+                preparedStatement.setString(4, lane.name());
+                preparedStatement.setLong(5, System.currentTimeMillis());
+                preparedStatement.setInt(6, priority);
                 preparedStatement.executeUpdate();
             } catch (SQLException ex) {
                 throw new PolySwarmDbException("Error adding new file to pending_rescans table.", ex); // NON-NLS
@@ -564,7 +689,7 @@ public class PolySwarmDb {
             Connection conn = connect();
 
             PreparedStatement preparedStatement = null;
-            String sql = "UPDATE pending_rescan SET cancelled=? WHERE abstract_file_id=?";
+            String sql = "UPDATE pending_rescans SET cancelled=? WHERE abstract_file_id=?";
 
             try {
                 preparedStatement = conn.prepareStatement(sql);
@@ -572,7 +697,7 @@ public class PolySwarmDb {
                 preparedStatement.setLong(2, pendingRescan.getAbstractFileId());
                 preparedStatement.executeUpdate();
             } catch (SQLException ex) {
-                throw new PolySwarmDbException("Error updating pending_rescan table.", ex); // NON-NLS
+                throw new PolySwarmDbException("Error updating pending_rescans table.", ex); // NON-NLS
             } finally {
                 PolySwarmDbUtils.closeStatement(preparedStatement);
                 PolySwarmDbUtils.closeConnection(conn);
@@ -640,11 +765,11 @@ public class PolySwarmDb {
             PendingRescan psResult;
             PreparedStatement preparedStatement = null;
             ResultSet resultSet = null;
-            String sql = "SELECT abstract_file_id, sha256_hash, rescan_uuid, cancelled FROM pending_rescans";
+            String sql = "SELECT abstract_file_id, sha256_hash, rescan_uuid, cancelled, lane, created_at, attempts, priority FROM pending_rescans";
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 resultSet = preparedStatement.executeQuery();
-                if (resultSet.next()) {
+                while (resultSet.next()) {
                     psResult = getPendingRescanFromResultSet(resultSet);
                     pendingRescans.add(psResult);
                 }
@@ -704,8 +829,11 @@ public class PolySwarmDb {
             return null;
         }
 
-        return new PendingRescan(resultSet.getLong("abstract_file_id"), resultSet.getString("sha256_hash"),
-                resultSet.getString("rescan_uuid"), resultSet.getBoolean("cancelled"));
+        PendingRescan pendingRescan = new PendingRescan(resultSet.getLong("abstract_file_id"), resultSet.getString("sha256_hash"),
+                resultSet.getString("rescan_uuid"), resultSet.getBoolean("cancelled"), PendingTaskLane.fromName(resultSet.getString("lane")));
+        pendingRescan.setAttemptHistory(resultSet.getLong("created_at"), resultSet.getInt("attempts"));
+        pendingRescan.setPriority(resultSet.getInt("priority"));
+        return pendingRescan;
     }
 
     /**
@@ -717,18 +845,35 @@ public class PolySwarmDb {
      * @throws PolySwarmDbException
      */
     public void newPendingHashLookup(Long abstractFileId, String md5Hash) throws PolySwarmDbException {
+        newPendingHashLookup(abstractFileId, md5Hash, PendingTaskLane.INTERACTIVE, 0);
+    }
+
+    /**
+     * Add a new hash to the pending_hashes table in the given priority lane
+     *
+     * @param abstractFileId Autopsy AbstractFile ID number
+     * @param md5Hash hash of the file
+     * @param lane priority lane
+     * @param priority risk score, higher is processed first
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingHashLookup(Long abstractFileId, String md5Hash, PendingTaskLane lane, int priority) throws PolySwarmDbException {
         try {
             acquireExclusiveLock();
 
             Connection conn = connect();
 
             PreparedStatement preparedStatement = null;
-            String sql = "INSERT INTO pending_hashes (abstract_file_id, md5_hash) VALUES (?, ?)";
+            String sql = "INSERT INTO pending_hashes (abstract_file_id, md5_hash, lane, created_at, priority) VALUES (?, ?, ?, ?, ?)";
 
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 preparedStatement.setLong(1, abstractFileId);
                 preparedStatement.setString(2, md5Hash);
+                preparedStatement.setString(3, lane.name());
+                preparedStatement.setLong(4, System.currentTimeMillis());
+                preparedStatement.setInt(5, priority);
                 preparedStatement.executeUpdate();
             } catch (SQLException ex) {
                 throw new PolySwarmDbException("Error adding new file to pending_hashes table.", ex); // NON-NLS
@@ -741,6 +886,52 @@ public class PolySwarmDb {
         }
     }
 
+    /**
+     * Add several hashes to the pending_hashes table in one transaction
+     *
+     * @param pendingHashLookups lookups to add, with their lane and priority
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newPendingHashLookups(List<PendingHashLookup> pendingHashLookups) throws PolySwarmDbException {
+        if (pendingHashLookups.isEmpty()) {
+            return;
+        }
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = "INSERT INTO pending_hashes (abstract_file_id, md5_hash, lane, created_at, priority) VALUES (?, ?, ?, ?, ?)";
+
+            try {
+                // the pool turns auto-commit back on when the connection is returned
+                conn.setAutoCommit(false);
+                long createdAt = System.currentTimeMillis();
+                preparedStatement = conn.prepareStatement(sql);
+                for (PendingHashLookup pendingHashLookup : pendingHashLookups) {
+                    preparedStatement.setLong(1, pendingHashLookup.getAbstractFileId());
+                    preparedStatement.setString(2, pendingHashLookup.getMd5Hash());
+                    preparedStatement.setString(3, pendingHashLookup.getLane().name());
+                    preparedStatement.setLong(4, createdAt);
+                    preparedStatement.setInt(5, pendingHashLookup.getPriority());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                rollback(conn);
+                throw new PolySwarmDbException("Error adding new files to pending_hashes table.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
     /**
      * Check to see if a hash is already in the pending_hashes table.
      *
@@ -795,7 +986,7 @@ public class PolySwarmDb {
             Connection conn = connect();
 
             PreparedStatement preparedStatement = null;
-            String sql = "UPDATE pending_rescan SET cancelled=? WHERE abstract_file_id=?";
+            String sql = "UPDATE pending_hashes SET cancelled=? WHERE abstract_file_id=?";
 
             try {
                 preparedStatement = conn.prepareStatement(sql);
@@ -803,7 +994,7 @@ public class PolySwarmDb {
                 preparedStatement.setLong(2, pendingHashLookup.getAbstractFileId());
                 preparedStatement.executeUpdate();
             } catch (SQLException ex) {
-                throw new PolySwarmDbException("Error updating pending_rescan table.", ex); // NON-NLS
+                throw new PolySwarmDbException("Error updating pending_hashes table.", ex); // NON-NLS
             } finally {
                 PolySwarmDbUtils.closeStatement(preparedStatement);
                 PolySwarmDbUtils.closeConnection(conn);
@@ -830,11 +1021,11 @@ public class PolySwarmDb {
             PendingHashLookup psResult;
             PreparedStatement preparedStatement = null;
             ResultSet resultSet = null;
-            String sql = "SELECT abstract_file_id, md5_hash, cancelled FROM pending_hashes";
+            String sql = "SELECT abstract_file_id, md5_hash, cancelled, lane, created_at, attempts, priority FROM pending_hashes";
             try {
                 preparedStatement = conn.prepareStatement(sql);
                 resultSet = preparedStatement.executeQuery();
-                if (resultSet.next()) {
+                while (resultSet.next()) {
                     psResult = getPendingHashLookupFromResultSet(resultSet);
                     pendingHashLookups.add(psResult);
                 }
@@ -894,8 +1085,385 @@ public class PolySwarmDb {
             return null;
         }
 
-        return new PendingHashLookup(resultSet.getLong("abstract_file_id"), resultSet.getString("md5_hash"),
-                resultSet.getBoolean("cancelled"));
+        PendingHashLookup pendingHashLookup = new PendingHashLookup(resultSet.getLong("abstract_file_id"), resultSet.getString("md5_hash"),
+                resultSet.getBoolean("cancelled"), PendingTaskLane.fromName(resultSet.getString("lane")));
+        pendingHashLookup.setAttemptHistory(resultSet.getLong("created_at"), resultSet.getInt("attempts"));
+        pendingHashLookup.setPriority(resultSet.getInt("priority"));
+        return pendingHashLookup;
+    }
+
+    /**
+     * Record a submit or poll attempt on a pending task
+     *
+     * @param pendingTask task that was attempted
+     * @param attempts attempts so far, including this one
+     *
+     * @throws PolySwarmDbException
+     */
+    public void recordPendingTaskAttempt(PendingTask pendingTask, int attempts) throws PolySwarmDbException {
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = String.format("UPDATE %s SET attempts=?, last_attempt_at=? WHERE abstract_file_id=?", getPendingTable(pendingTask.getTaskType()));
+
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                preparedStatement.setInt(1, attempts);
+                preparedStatement.setLong(2, System.currentTimeMillis());
+                preparedStatement.setLong(3, pendingTask.getAbstractFileId());
+                preparedStatement.executeUpdate();
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error recording attempt for pending task: " + pendingTask.toString(), ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * Delete many pending tasks in one transaction, with one statement per table for each MAX_DELETE_IDS files
+     *
+     * @param pendingTasks tasks to delete
+     * @throws PolySwarmDbException
+     */
+    public void deletePendingTasks(List<? extends PendingTask> pendingTasks) throws PolySwarmDbException {
+        Map<PendingTaskType, List<Long>> fileIds = new EnumMap<>(PendingTaskType.class);
+        for (PendingTask pendingTask : pendingTasks) {
+            fileIds.computeIfAbsent(pendingTask.getTaskType(), taskType -> new ArrayList<>()).add(pendingTask.getAbstractFileId());
+        }
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            try {
+                // the pool turns auto-commit back on when the connection is returned
+                conn.setAutoCommit(false);
+                for (Map.Entry<PendingTaskType, List<Long>> entry : fileIds.entrySet()) {
+                    List<Long> ids = entry.getValue();
+                    for (int start = 0; start < ids.size(); start += MAX_DELETE_IDS) {
+                        List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_DELETE_IDS));
+                        String sql = String.format("DELETE FROM %s WHERE abstract_file_id IN (%s)", getPendingTable(entry.getKey()),
+                                String.join(", ", Collections.nCopies(chunk.size(), "?")));
+                        PreparedStatement preparedStatement = conn.prepareStatement(sql);
+                        try {
+                            for (int i = 0; i < chunk.size(); i++) {
+                                preparedStatement.setLong(i + 1, chunk.get(i));
+                            }
+                            preparedStatement.executeUpdate();
+                        } finally {
+                            PolySwarmDbUtils.closeStatement(preparedStatement);
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                rollback(conn);
+                throw new PolySwarmDbException("Error deleting pending tasks.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * @param taskType type of pending task
+     * @return the table holding tasks of that type
+     */
+    private static String getPendingTable(PendingTaskType taskType) {
+        switch (taskType) {
+            case SUBMISSION:
+                return "pending_submissions"; // NON-NLS
+            case RESCAN:
+                return "pending_rescans"; // NON-NLS
+            case HASH_LOOKUP:
+            default:
+                return "pending_hashes"; // NON-NLS
+        }
+    }
+
+    /**
+     * Record the throughput of a finished upload in the upload_stats table
+     *
+     * @param abstractFileId Autopsy AbstractFile ID number
+     * @param bytes number of bytes uploaded
+     * @param elapsedMillis time the upload took
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newUploadStats(Long abstractFileId, long bytes, long elapsedMillis) throws PolySwarmDbException {
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = "INSERT INTO upload_stats (abstract_file_id, bytes, elapsed_ms, created_at) VALUES (?, ?, ?, ?)";
+
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                preparedStatement.setLong(1, abstractFileId);
+                preparedStatement.setLong(2, bytes);
+                preparedStatement.setLong(3, elapsedMillis);
+                preparedStatement.setLong(4, System.currentTimeMillis());
+                preparedStatement.executeUpdate();
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error adding upload to upload_stats table.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * Record how long a scan took from submission until its window closed, as bracketed by a poll that saw the window
+     * still open
+     *
+     * @param taskType type of request, eg SUBMISSION or RESCAN
+     * @param community community the scan ran in
+     * @param latencyMillis time from submission to window closed
+     *
+     * @throws PolySwarmDbException
+     */
+    public void newWindowLatency(String taskType, String community, long latencyMillis) throws PolySwarmDbException {
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = "INSERT INTO window_latencies (task_type, community, latency_ms, created_at, bracketed) VALUES (?, ?, ?, ?, 1)";
+
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                preparedStatement.setString(1, taskType);
+                preparedStatement.setString(2, community);
+                preparedStatement.setLong(3, latencyMillis);
+                preparedStatement.setLong(4, System.currentTimeMillis());
+                preparedStatement.executeUpdate();
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error adding latency to window_latencies table.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * Get the most recent window latencies for a request type and community. Latencies recorded before they were
+     * bracketed only measured the module's own poll delay, and are skipped.
+     *
+     * @param taskType type of request
+     * @param community community the scans ran in
+     * @param limit max number of latencies to return
+     * @return latencies in milliseconds, newest first
+     *
+     * @throws PolySwarmDbException
+     */
+    public List<Long> getWindowLatencies(String taskType, String community, int limit) throws PolySwarmDbException {
+        try {
+            acquireSharedLock();
+
+            Connection conn = connect();
+
+            List<Long> latencies = new ArrayList<>();
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
+            String sql = "SELECT latency_ms FROM window_latencies WHERE task_type=? AND community=? AND bracketed=1 ORDER BY id DESC LIMIT ?";
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                preparedStatement.setString(1, taskType);
+                preparedStatement.setString(2, community);
+                preparedStatement.setInt(3, limit);
+                resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    latencies.add(resultSet.getLong("latency_ms"));
+                }
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error getting window latencies.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeResultSet(resultSet);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+            return latencies;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Add a finished result to the result_outbox table and delete the pending tasks it is for, in one transaction, so
+     * the result is kept even if its blackboard write fails.
+     *
+     * @param pendingTasks tasks the result is for
+     * @param result result, as stored by PendingTaskResult.toJson
+     * @return id of the outbox entry
+     *
+     * @throws PolySwarmDbException
+     */
+    public long newResultOutboxEntry(List<PendingTask> pendingTasks, String result) throws PolySwarmDbException {
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
+            String sql = "INSERT INTO result_outbox (abstract_file_ids, result, created_at) VALUES (?, ?, ?)";
+
+            try {
+                // the pool turns auto-commit back on when the connection is returned
+                conn.setAutoCommit(false);
+                List<Long> abstractFileIds = new ArrayList<>();
+                for (PendingTask pendingTask : pendingTasks) {
+                    abstractFileIds.add(pendingTask.getAbstractFileId());
+                }
+                preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                preparedStatement.setString(1, joinIds(abstractFileIds));
+                preparedStatement.setString(2, result);
+                preparedStatement.setLong(3, System.currentTimeMillis());
+                preparedStatement.executeUpdate();
+                resultSet = preparedStatement.getGeneratedKeys();
+                if (!resultSet.next()) {
+                    throw new SQLException("No id for the new outbox entry"); // NON-NLS
+                }
+                long id = resultSet.getLong(1);
+
+                for (PendingTask pendingTask : pendingTasks) {
+                    PolySwarmDbUtils.closeStatement(preparedStatement);
+                    preparedStatement = conn.prepareStatement(String.format("DELETE from %s WHERE abstract_file_id=?", getPendingTable(pendingTask.getTaskType())));
+                    preparedStatement.setLong(1, pendingTask.getAbstractFileId());
+                    preparedStatement.executeUpdate();
+                }
+                conn.commit();
+                return id;
+            } catch (SQLException ex) {
+                rollback(conn);
+                throw new PolySwarmDbException("Error adding result to result_outbox table for: " + pendingTasks.toString(), ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeResultSet(resultSet);
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * Get the results still waiting for their blackboard write
+     *
+     * @return entries of the result_outbox table, oldest first
+     *
+     * @throws PolySwarmDbException
+     */
+    public List<ResultOutboxEntry> getResultOutboxEntries() throws PolySwarmDbException {
+        try {
+            acquireSharedLock();
+
+            Connection conn = connect();
+
+            List<ResultOutboxEntry> entries = new ArrayList<>();
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
+            String sql = "SELECT id, abstract_file_ids, result FROM result_outbox ORDER BY id";
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    entries.add(new ResultOutboxEntry(resultSet.getLong("id"), splitIds(resultSet.getString("abstract_file_ids")), resultSet.getString("result")));
+                }
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error getting result outbox entries.", ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeResultSet(resultSet);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+            return entries;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Delete a result from the result_outbox table once it is in the blackboard
+     *
+     * @param id id of the outbox entry
+     *
+     * @throws PolySwarmDbException
+     */
+    public void deleteResultOutboxEntry(long id) throws PolySwarmDbException {
+        try {
+            acquireExclusiveLock();
+
+            Connection conn = connect();
+
+            PreparedStatement preparedStatement = null;
+            String sql = "DELETE from result_outbox WHERE id=?";
+            try {
+                preparedStatement = conn.prepareStatement(sql);
+                preparedStatement.setLong(1, id);
+                preparedStatement.executeUpdate();
+            } catch (SQLException ex) {
+                throw new PolySwarmDbException("Error deleting result outbox entry: " + id, ex); // NON-NLS
+            } finally {
+                PolySwarmDbUtils.closeStatement(preparedStatement);
+                PolySwarmDbUtils.closeConnection(conn);
+            }
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    private static String joinIds(List<Long> ids) {
+        StringBuilder joined = new StringBuilder();
+        for (Long id : ids) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(id);
+        }
+        return joined.toString();
+    }
+
+    private static List<Long> splitIds(String joined) {
+        List<Long> ids = new ArrayList<>();
+        for (String id : joined.split(",")) {
+            if (!id.isEmpty()) {
+                ids.add(Long.valueOf(id));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Roll back a failed transaction
+     */
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to roll back transaction", ex); // NON-NLS
+        }
     }
 
     /**
@@ -24,9 +24,13 @@
 package io.polyswarm.app.datamodel;
 
 import io.polyswarm.app.datamodel.migrations.AddCancelledColumnMigration;
+import io.polyswarm.app.datamodel.migrations.AddColumnMigration;
 import io.polyswarm.app.datamodel.migrations.CreatePendingHashLookupMigration;
 import io.polyswarm.app.datamodel.migrations.CreatePendingRescanMigration;
 import io.polyswarm.app.datamodel.migrations.CreatePendingSubmissionMigration;
+import io.polyswarm.app.datamodel.migrations.CreateResultOutboxMigration;
+import io.polyswarm.app.datamodel.migrations.CreateUploadStatsMigration;
+import io.polyswarm.app.datamodel.migrations.CreateWindowLatencyMigration;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -61,6 +65,9 @@ public final class PolySwarmDbSettings {
     private static final String PRAGMA_READ_UNCOMMITTED_TRUE = "PRAGMA read_uncommitted = True"; // NON-NLS
     private static final String PRAGMA_ENCODING_UTF8 = "PRAGMA encoding = 'UTF-8'"; // NON-NLS
     private static final String PRAGMA_PAGE_SIZE_4096 = "PRAGMA page_size = 4096"; // NON-NLS
+    private static final String LANE_COLUMN_DEFINITION = "text NOT NULL DEFAULT 'INTERACTIVE'"; // NON-NLS
+    private static final String COUNTER_COLUMN_DEFINITION = "integer NOT NULL DEFAULT 0"; // NON-NLS
+    private static final String HASH_COLUMN_DEFINITION = "text NOT NULL DEFAULT ''"; // NON-NLS
     private String baseDirPath;
 
     public PolySwarmDbSettings() {
@@ -144,6 +151,15 @@ public final class PolySwarmDbSettings {
         return baseDirPath + File.separator + DB_DIRECTORY_NAME;
     }
 
+    /**
+     * Get the module directory of the case this db belongs to.
+     *
+     * @return Full path, or null if no case was open
+     */
+    public String getBaseDirPath() {
+        return baseDirPath;
+    }
+
     public String getConnectionURL() {
         StringBuilder connUrl = new StringBuilder();
         connUrl.append(getJDBCBaseURI());
@@ -248,6 +264,26 @@ public final class PolySwarmDbSettings {
         new AddCancelledColumnMigration("pending_submissions").run(connection);
         new AddCancelledColumnMigration("pending_rescans").run(connection);
         new AddCancelledColumnMigration("pending_hashes").run(connection);
+        new CreateUploadStatsMigration().run(connection);
+        new AddColumnMigration("pending_submissions", "lane", LANE_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_rescans", "lane", LANE_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_hashes", "lane", LANE_COLUMN_DEFINITION).run(connection);
+        new CreateWindowLatencyMigration().run(connection);
+        new AddColumnMigration("pending_submissions", "created_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_rescans", "created_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_hashes", "created_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_submissions", "last_attempt_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_rescans", "last_attempt_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_hashes", "last_attempt_at", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_submissions", "attempts", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_rescans", "attempts", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_hashes", "attempts", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_submissions", "priority", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_rescans", "priority", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_hashes", "priority", COUNTER_COLUMN_DEFINITION).run(connection);
+        new AddColumnMigration("pending_submissions", "md5_hash", HASH_COLUMN_DEFINITION).run(connection);
+        new CreateResultOutboxMigration().run(connection);
+        new AddColumnMigration("window_latencies", "bracketed", COUNTER_COLUMN_DEFINITION).run(connection);
     }
 
     /**
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.datamodel;
+
+import java.util.List;
+
+/**
+ * A result in the result_outbox table, waiting to be written to the blackboard for its files
+ */
+public class ResultOutboxEntry {
+
+    private final long id;
+    private final List<Long> abstractFileIds;
+    private final String result;
+
+    public ResultOutboxEntry(long id, List<Long> abstractFileIds, String result) {
+        this.id = id;
+        this.abstractFileIds = abstractFileIds;
+        this.result = result;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return ids of the files the result is for
+     */
+    public List<Long> getAbstractFileIds() {
+        return abstractFileIds;
+    }
+
+    /**
+     * @return the result, as stored by PendingTaskResult.toJson
+     */
+    public String getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResultOutboxEntry(id: %s, abstractFileIds: %s)", id, abstractFileIds);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.datamodel.migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Create a table of results waiting for their blackboard write, with the files each result is for
+ */
+public class CreateResultOutboxMigration implements Migration {
+
+    @Override
+    public void run(Connection connection) throws SQLException {
+        StringBuilder createResultOutboxTable = new StringBuilder();
+        createResultOutboxTable.append("CREATE TABLE IF NOT EXISTS result_outbox(");
+        createResultOutboxTable.append("id integer primary key autoincrement NOT NULL,");
+        createResultOutboxTable.append("abstract_file_ids text NOT NULL,");
+        createResultOutboxTable.append("result text NOT NULL,");
+        createResultOutboxTable.append("created_at integer NOT NULL");
+        createResultOutboxTable.append(")");
+
+        Statement statement = connection.createStatement();
+        statement.execute(createResultOutboxTable.toString());
+    }
+
+}
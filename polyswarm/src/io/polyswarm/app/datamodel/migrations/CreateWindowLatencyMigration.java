@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.datamodel.migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Create a table of observed submit to window closed latencies, per request type and community
+ */
+public class CreateWindowLatencyMigration implements Migration {
+
+    @Override
+    public void run(Connection connection) throws SQLException {
+        StringBuilder createWindowLatencyTable = new StringBuilder();
+        createWindowLatencyTable.append("CREATE TABLE IF NOT EXISTS window_latencies(");
+        createWindowLatencyTable.append("id integer primary key autoincrement NOT NULL,");
+        createWindowLatencyTable.append("task_type text NOT NULL,");
+        createWindowLatencyTable.append("community text NOT NULL,");
+        createWindowLatencyTable.append("latency_ms integer NOT NULL,");
+        createWindowLatencyTable.append("created_at integer NOT NULL");
+        createWindowLatencyTable.append(")");
+
+        Statement statement = connection.createStatement();
+        statement.execute(createWindowLatencyTable.toString());
+    }
+
+}
@@ -28,9 +28,20 @@ import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 
 /**
  * Manage settings for the connection to the PolySwarm marketplace
+ *
+ * Only the API key, community and PolyScore settings are edited in the options panel. The tuning settings (spool,
+ * workers, lanes, deadlines and results) are read from the module config and never written back, so a config without
+ * them keeps following the defaults.
  */
 public final class PolySwarmMarketplaceSettings {
 
+    /**
+     * Keys of the per task type settings
+     */
+    public static final String TASK_KEY_SUBMISSIONS = "submissions"; // NON-NLS
+    public static final String TASK_KEY_RESCANS = "rescans"; // NON-NLS
+    public static final String TASK_KEY_HASH_LOOKUPS = "hashlookups"; // NON-NLS
+
     private final static Logger LOGGER = Logger.getLogger(PolySwarmMarketplaceSettings.class.getName());
     private final String DEFAULT_API_KEY = ""; // NON-NLS
     private final String DEFAULT_URL = "https://api.polyswarm.network/v2/"; // NON-NLS
@@ -39,9 +50,51 @@ public final class PolySwarmMarketplaceSettings {
     private final String SETTINGS_TAG_API_KEY = "polyswarm.apikey"; // NON-NLS
     private final String SETTINGS_TAG_COMMUNITY = "polyswarm.community"; // NON-NLS
     private final String SETTINGS_TAG_POLYSCORE = "polyswarm.polyscore"; // NON-NLS
+    private final String SETTINGS_TAG_SPOOL_ENABLED = "polyswarm.spool.enabled"; // NON-NLS
+    private final String SETTINGS_TAG_SPOOL_MAX_MEGABYTES = "polyswarm.spool.maxmegabytes"; // NON-NLS
+    private final int DEFAULT_SPOOL_MAX_MEGABYTES = 1024;
+    private final String SETTINGS_TAG_SUBMISSION_WORKERS = "polyswarm.workers." + TASK_KEY_SUBMISSIONS; // NON-NLS
+    private final String SETTINGS_TAG_RESCAN_WORKERS = "polyswarm.workers." + TASK_KEY_RESCANS; // NON-NLS
+    private final String SETTINGS_TAG_HASH_LOOKUP_WORKERS = "polyswarm.workers." + TASK_KEY_HASH_LOOKUPS; // NON-NLS
+    private final int DEFAULT_SUBMISSION_WORKERS = 2;
+    private final int DEFAULT_RESCAN_WORKERS = 2;
+    private final int DEFAULT_HASH_LOOKUP_WORKERS = 4;
+    private final String SETTINGS_TAG_VIRTUAL_THREADS = "polyswarm.workers.virtualthreads"; // NON-NLS
+    private final String SETTINGS_TAG_MAX_CONCURRENT_REQUESTS = "polyswarm.workers.maxrequests"; // NON-NLS
+    private final int DEFAULT_MAX_CONCURRENT_REQUESTS = 32;
+    private final String SETTINGS_TAG_INTERACTIVE_RESERVED = "polyswarm.lanes.interactivereserved"; // NON-NLS
+    private final String SETTINGS_TAG_BULK_AGING_SECONDS = "polyswarm.lanes.bulkagingseconds"; // NON-NLS
+    private final int DEFAULT_INTERACTIVE_RESERVED = 1;
+    private final int DEFAULT_BULK_AGING_SECONDS = 60;
+    private final String SETTINGS_TAG_SUBMISSION_DEADLINE = "polyswarm.deadlines." + TASK_KEY_SUBMISSIONS; // NON-NLS
+    private final String SETTINGS_TAG_RESCAN_DEADLINE = "polyswarm.deadlines." + TASK_KEY_RESCANS; // NON-NLS
+    private final String SETTINGS_TAG_HASH_LOOKUP_DEADLINE = "polyswarm.deadlines." + TASK_KEY_HASH_LOOKUPS; // NON-NLS
+    private final String SETTINGS_TAG_MAX_ATTEMPTS = "polyswarm.deadlines.maxattempts"; // NON-NLS
+    private final int DEFAULT_SUBMISSION_DEADLINE_MINUTES = 120;
+    private final int DEFAULT_RESCAN_DEADLINE_MINUTES = 120;
+    private final int DEFAULT_HASH_LOOKUP_DEADLINE_MINUTES = 30;
+    private final int DEFAULT_MAX_ATTEMPTS = 500;
+    private final String SETTINGS_TAG_UPSERT_RESULTS = "polyswarm.results.upsert"; // NON-NLS
+    private final String SETTINGS_TAG_MAX_PUBLICATION_DELAY = "polyswarm.results.maxdelayseconds"; // NON-NLS
+    private final int DEFAULT_MAX_PUBLICATION_DELAY_SECONDS = 30;
     private String apiKey;
     private String community;
     private Boolean polyScore;
+    private Boolean spoolEnabled;
+    private int spoolMaxMegabytes;
+    private int submissionWorkers;
+    private int rescanWorkers;
+    private int hashLookupWorkers;
+    private Boolean virtualThreads;
+    private int maxConcurrentRequests;
+    private int interactiveReserved;
+    private int bulkAgingSeconds;
+    private int submissionDeadlineMinutes;
+    private int rescanDeadlineMinutes;
+    private int hashLookupDeadlineMinutes;
+    private int maxAttempts;
+    private Boolean upsertResults;
+    private int maxPublicationDelaySeconds;
 
     public PolySwarmMarketplaceSettings() {
         loadSettings();
@@ -63,6 +116,39 @@ public final class PolySwarmMarketplaceSettings {
 
         String storedShowPolyScore = ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_POLYSCORE);
         polyScore = storedShowPolyScore == null || storedShowPolyScore.isEmpty();
+
+        spoolEnabled = Boolean.parseBoolean(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_SPOOL_ENABLED));
+        spoolMaxMegabytes = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_SPOOL_MAX_MEGABYTES), DEFAULT_SPOOL_MAX_MEGABYTES);
+        submissionWorkers = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_SUBMISSION_WORKERS), DEFAULT_SUBMISSION_WORKERS);
+        rescanWorkers = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_RESCAN_WORKERS), DEFAULT_RESCAN_WORKERS);
+        hashLookupWorkers = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_HASH_LOOKUP_WORKERS), DEFAULT_HASH_LOOKUP_WORKERS);
+
+        String storedVirtualThreads = ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_VIRTUAL_THREADS);
+        virtualThreads = storedVirtualThreads == null || storedVirtualThreads.isEmpty() || Boolean.parseBoolean(storedVirtualThreads);
+        maxConcurrentRequests = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_MAX_CONCURRENT_REQUESTS), DEFAULT_MAX_CONCURRENT_REQUESTS);
+        interactiveReserved = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_INTERACTIVE_RESERVED), DEFAULT_INTERACTIVE_RESERVED);
+        bulkAgingSeconds = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_BULK_AGING_SECONDS), DEFAULT_BULK_AGING_SECONDS);
+        submissionDeadlineMinutes = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_SUBMISSION_DEADLINE), DEFAULT_SUBMISSION_DEADLINE_MINUTES);
+        rescanDeadlineMinutes = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_RESCAN_DEADLINE), DEFAULT_RESCAN_DEADLINE_MINUTES);
+        hashLookupDeadlineMinutes = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_HASH_LOOKUP_DEADLINE), DEFAULT_HASH_LOOKUP_DEADLINE_MINUTES);
+        maxAttempts = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_MAX_ATTEMPTS), DEFAULT_MAX_ATTEMPTS);
+
+        upsertResults = Boolean.parseBoolean(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_UPSERT_RESULTS));
+        maxPublicationDelaySeconds = parseInt(ModuleSettings.getConfigSetting(MODULE_NAME, SETTINGS_TAG_MAX_PUBLICATION_DELAY), DEFAULT_MAX_PUBLICATION_DELAY_SECONDS);
+    }
+
+    /**
+     * Parse a stored integer setting, falling back to the default when missing or invalid.
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
     }
 
     public void saveSettings() {
@@ -94,6 +180,102 @@ public final class PolySwarmMarketplaceSettings {
         return polyScore;
     }
 
+    /**
+     * Whether submission content is spooled to the case module folder so retries don't re-read the image
+     */
+    public Boolean isSpoolEnabled() {
+        return spoolEnabled;
+    }
+
+    public long getSpoolMaxBytes() {
+        return spoolMaxMegabytes * 1024L * 1024L;
+    }
+
+    /**
+     * How many tasks of the given type may be processed at the same time
+     *
+     * @param taskKey one of the TASK_KEY_ constants
+     * @return concurrency limit, at least 1
+     */
+    public int getWorkerLimit(String taskKey) {
+        switch (taskKey) {
+            case TASK_KEY_SUBMISSIONS:
+                return Math.max(1, submissionWorkers);
+            case TASK_KEY_RESCANS:
+                return Math.max(1, rescanWorkers);
+            case TASK_KEY_HASH_LOOKUPS:
+            default:
+                return Math.max(1, hashLookupWorkers);
+        }
+    }
+
+    /**
+     * Whether each pending task runs on its own virtual thread, when the JDK supports them
+     */
+    public Boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * How many tasks may talk to the API at once when running on virtual threads
+     */
+    public int getMaxConcurrentRequests() {
+        return Math.max(1, maxConcurrentRequests);
+    }
+
+    /**
+     * How many workers of each task type are kept free for interactive tasks
+     */
+    public int getInteractiveReserved() {
+        return Math.max(0, interactiveReserved);
+    }
+
+    /**
+     * How long a bulk task may wait before it is allowed to use the reserved interactive capacity
+     */
+    public long getBulkAgingMillis() {
+        return Math.max(0, bulkAgingSeconds) * 1000L;
+    }
+
+    /**
+     * How long a task of the given type may stay pending before it is timed out
+     *
+     * @param taskKey one of the TASK_KEY_ constants
+     * @return deadline in ms, at least a minute
+     */
+    public long getDeadlineMillis(String taskKey) {
+        switch (taskKey) {
+            case TASK_KEY_SUBMISSIONS:
+                return Math.max(1, submissionDeadlineMinutes) * 60000L;
+            case TASK_KEY_RESCANS:
+                return Math.max(1, rescanDeadlineMinutes) * 60000L;
+            case TASK_KEY_HASH_LOOKUPS:
+            default:
+                return Math.max(1, hashLookupDeadlineMinutes) * 60000L;
+        }
+    }
+
+    /**
+     * How many submit or poll attempts a task gets before it is timed out
+     */
+    public int getMaxAttempts() {
+        return Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Whether new results update a file's existing PolySwarm artifact instead of adding another one. Off by default.
+     */
+    public Boolean upsertResults() {
+        return upsertResults;
+    }
+
+    /**
+     * How long a result may be held back while ingest runs, so it goes to the blackboard with others in one write
+     */
+    public long getMaxPublicationDelayMillis() {
+        return Math.max(0, maxPublicationDelaySeconds) * 1000L;
+    }
+
     /**
      * Set the new API Key and test if it's valid.
      *
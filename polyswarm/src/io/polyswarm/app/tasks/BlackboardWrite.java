@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.BlackboardTypeCache;
+import io.polyswarm.app.PolySwarmController;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * The blackboard attributes of one result, for every file it applies to, built ahead of the write so several results
+ * can be committed together.
+ */
+public final class BlackboardWrite {
+
+    private static final Logger LOGGER = Logger.getLogger(BlackboardWrite.class.getName());
+    private final Map<AbstractFile, List<BlackboardAttribute>> results;
+    private final boolean complete;
+    private final boolean knownBad;
+
+    /**
+     * @param results attributes per file, a separate list per file since attributes are bound to their artifact
+     * @param complete whether the attributes are a complete result, or only a comment
+     * @param knownBad whether the files are set to known bad after the write
+     */
+    BlackboardWrite(Map<AbstractFile, List<BlackboardAttribute>> results, boolean complete, boolean knownBad) {
+        this.results = results;
+        this.complete = complete;
+        this.knownBad = knownBad;
+    }
+
+    /**
+     * @return ids of the files this write is for
+     */
+    public Set<Long> getAbstractFileIds() {
+        Set<Long> abstractFileIds = new HashSet<>();
+        for (AbstractFile abstractFile : results.keySet()) {
+            abstractFileIds.add(abstractFile.getId());
+        }
+        return abstractFileIds;
+    }
+
+    /**
+     * Commit a write on its own
+     *
+     * @param autopsyCase open case
+     */
+    public void commit(Case autopsyCase) throws TskCoreException {
+        commit(autopsyCase, Collections.singletonList(this));
+    }
+
+    /**
+     * Commit several writes in a single case db transaction. The writes must be for different files.
+     *
+     * Without upsert a new artifact is added per result. With upsert each file's existing artifact is reused: nothing
+     * is written when the result is unchanged, and only the new attributes are added when the result only adds to it.
+     * The blackboard can't update or remove single attributes, so when existing values of a complete result changed the
+     * result is written to a new artifact. The old one is never deleted: it may carry the examiner's tags and comments,
+     * and it is the file's result history. Partial results, like a not found comment, only add what's missing.
+     *
+     * TSK 4.9 can't create artifacts, or set the known status, inside a transaction; only the attributes are written in
+     * it. So new artifacts are created while planning, and deleted again if the write fails, so a retry doesn't leave
+     * empty artifacts behind. The known status is set after the commit, and failures from then on are only logged,
+     * since the result is already in the blackboard.
+     *
+     * @param autopsyCase open case
+     * @param writes writes to commit
+     */
+    public static void commit(Case autopsyCase, List<BlackboardWrite> writes) throws TskCoreException {
+        boolean upsert = new PolySwarmMarketplaceSettings().upsertResults();
+        Map<BlackboardArtifact, List<BlackboardAttribute>> additions = new LinkedHashMap<>();
+        List<BlackboardArtifact> created = new ArrayList<>();
+        List<BlackboardArtifact> updated = new ArrayList<>();
+        try {
+            for (BlackboardWrite write : writes) {
+                for (Map.Entry<AbstractFile, List<BlackboardAttribute>> result : write.results.entrySet()) {
+                    BlackboardArtifact artifact = write.plan(autopsyCase, result.getKey(), result.getValue(), upsert, additions, created);
+                    if (artifact != null && write.complete) {
+                        updated.add(artifact);
+                    }
+                }
+            }
+
+            if (!additions.isEmpty()) {
+                SleuthkitCase.CaseDbTransaction transaction = autopsyCase.getSleuthkitCase().beginTransaction();
+                try {
+                    for (Map.Entry<BlackboardArtifact, List<BlackboardAttribute>> addition : additions.entrySet()) {
+                        addition.getKey().addAttributes(addition.getValue(), transaction);
+                    }
+                    transaction.commit();
+                } catch (TskCoreException ex) {
+                    try {
+                        transaction.rollback();
+                    } catch (TskCoreException rollbackEx) {
+                        LOGGER.log(Level.SEVERE, "Failed to roll back blackboard attributes.", rollbackEx);
+                    }
+                    throw ex;
+                }
+            }
+        } catch (TskCoreException ex) {
+            discard(autopsyCase, created);
+            throw ex;
+        }
+
+        // Set file to known bad when polyscore > 0.7 and at least 2 malicious responses
+        for (BlackboardWrite write : writes) {
+            if (write.knownBad) {
+                for (AbstractFile abstractFile : write.results.keySet()) {
+                    try {
+                        abstractFile.setKnown(TskData.FileKnown.BAD);
+                    } catch (TskCoreException ex) {
+                        LOGGER.log(Level.WARNING, String.format("Failed to set %s to known bad.", abstractFile.getName()), ex);
+                    }
+                }
+            }
+        }
+
+        // notify UI to update and display these results, together with the others completing around now
+        if (!updated.isEmpty()) {
+            BlackboardArtifact.Type artifactType = BlackboardTypeCache.getInstance(autopsyCase).getArtifactType(PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME);
+            for (BlackboardArtifact artifact : updated) {
+                ResultEventPublisher.publish(artifactType, artifact);
+            }
+        }
+    }
+
+    /**
+     * Delete the artifacts created for a write that failed. They have no attributes, since those were rolled back.
+     */
+    private static void discard(Case autopsyCase, List<BlackboardArtifact> created) {
+        for (BlackboardArtifact artifact : created) {
+            try {
+                autopsyCase.getSleuthkitCase().deleteBlackboardArtifact(artifact);
+            } catch (TskCoreException ex) {
+                LOGGER.log(Level.WARNING, "Failed to delete empty artifact of a failed write.", ex);
+            }
+        }
+    }
+
+    /**
+     * Work out what to write for one file
+     *
+     * @return the artifact written to, or null if the file's result is unchanged
+     */
+    private BlackboardArtifact plan(Case autopsyCase, AbstractFile abstractFile, List<BlackboardAttribute> attributes, boolean upsert,
+            Map<BlackboardArtifact, List<BlackboardAttribute>> additions, List<BlackboardArtifact> created) throws TskCoreException {
+        BlackboardArtifact existing = upsert ? PendingTask.findBlackboardArtifact(autopsyCase, abstractFile, PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME) : null;
+        if (existing == null) {
+            BlackboardArtifact artifact = PendingTask.getBlackboardArtifact(autopsyCase, abstractFile, PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME);
+            created.add(artifact);
+            additions.put(artifact, attributes);
+            return artifact;
+        }
+
+        Set<String> existingKeys = new HashSet<>();
+        for (BlackboardAttribute attribute : existing.getAttributes()) {
+            existingKeys.add(getAttributeKey(attribute));
+        }
+        Set<String> newKeys = new HashSet<>();
+        for (BlackboardAttribute attribute : attributes) {
+            newKeys.add(getAttributeKey(attribute));
+        }
+
+        if (existingKeys.containsAll(newKeys) && (!complete || newKeys.equals(existingKeys))) {
+            // unchanged, nothing to write
+            return null;
+        }
+        if (!complete || newKeys.containsAll(existingKeys)) {
+            List<BlackboardAttribute> added = new ArrayList<>();
+            for (BlackboardAttribute attribute : attributes) {
+                if (!existingKeys.contains(getAttributeKey(attribute))) {
+                    added.add(attribute);
+                }
+            }
+            additions.put(existing, added);
+            return existing;
+        }
+        BlackboardArtifact artifact = PendingTask.getBlackboardArtifact(autopsyCase, abstractFile, PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME);
+        created.add(artifact);
+        additions.put(artifact, attributes);
+        return artifact;
+    }
+
+    /**
+     * Identifies an attribute by its type and raw value, to compare results. The display string depends on formatting,
+     * eg of doubles and dates, so it isn't used.
+     */
+    private static String getAttributeKey(BlackboardAttribute attribute) {
+        String value;
+        switch (attribute.getValueType()) {
+            case INTEGER:
+                value = Integer.toString(attribute.getValueInt());
+                break;
+            case LONG:
+            case DATETIME:
+                value = Long.toString(attribute.getValueLong());
+                break;
+            case DOUBLE:
+                value = Double.toString(attribute.getValueDouble());
+                break;
+            case BYTE:
+                value = Arrays.toString(attribute.getValueBytes());
+                break;
+            case STRING:
+            default:
+                value = attribute.getValueString();
+                break;
+        }
+        return attribute.getAttributeType().getTypeID() + ":" + value;
+    }
+}
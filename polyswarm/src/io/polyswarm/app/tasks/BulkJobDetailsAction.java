@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.awt.event.ActionEvent;
+import java.util.List;
+import java.util.function.Supplier;
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import org.openide.util.NbBundle;
+import org.openide.windows.WindowManager;
+
+/**
+ * Shows the state of each task in a bulk job. The list is only built when the user asks for it.
+ */
+public class BulkJobDetailsAction extends AbstractAction {
+
+    private static final long serivalVersionUID = 1L;
+    private static final int ROWS = 20;
+    private static final int COLUMNS = 60;
+    private final transient Supplier<List<String>> details;
+
+    @NbBundle.Messages({"BulkJobDetailsAction.name=Details"})
+    BulkJobDetailsAction(Supplier<List<String>> details) {
+        super(Bundle.BulkJobDetailsAction_name());
+        this.details = details;
+    }
+
+    @Override
+    @NbBundle.Messages({"BulkJobDetailsAction.messageDialog.title=PolySwarm Bulk Job"})
+    public void actionPerformed(ActionEvent event) {
+        JTextArea textArea = new JTextArea(String.join("\n", details.get()), ROWS, COLUMNS);
+        textArea.setEditable(false);
+        JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(), new JScrollPane(textArea),
+                Bundle.BulkJobDetailsAction_messageDialog_title(), JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import javax.swing.Action;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.util.Cancellable;
+import org.openide.util.NbBundle;
+
+/**
+ * One determinate ProgressHandle for a bulk job, showing tasks done of total, throughput and ETA.
+ *
+ * A job starts with the first bulk task and lasts until no bulk tasks are left, so tasks queued while it runs join it.
+ */
+public class BulkJobProgress {
+
+    private final ProgressHandle progressHandle;
+    private final long startNanos;
+    private int total;
+    private int done;
+
+    /**
+     * @param cancellable called when the user cancels the progress bar
+     * @param details action showing the tasks in the job
+     */
+    @NbBundle.Messages({"BulkJobProgress.name=PolySwarm bulk job"})
+    public BulkJobProgress(Cancellable cancellable, Action details) {
+        progressHandle = ProgressHandle.createHandle(Bundle.BulkJobProgress_name(), cancellable, details);
+        progressHandle.start();
+        progressHandle.switchToIndeterminate();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Count a task added to the job
+     */
+    public synchronized void taskAdded() {
+        total++;
+        progressHandle.switchToDeterminate(total);
+        update();
+    }
+
+    /**
+     * Count a task that finished, failed or was cancelled
+     *
+     * @return true if that was the last task, and the progress bar is finished
+     */
+    public synchronized boolean taskDone() {
+        done++;
+        if (done >= total) {
+            progressHandle.finish();
+            return true;
+        }
+        update();
+        return false;
+    }
+
+    /**
+     * Finish the progress bar without waiting for the tasks
+     */
+    public synchronized void finish() {
+        progressHandle.finish();
+    }
+
+    @NbBundle.Messages({"BulkJobProgress.progress.message=%d of %d tasks, %.2f/s, %s remaining"})
+    private void update() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double tasksPerSecond = elapsedSeconds > 0 ? done / elapsedSeconds : 0;
+        progressHandle.progress(String.format(Bundle.BulkJobProgress_progress_message(),
+                done, total, tasksPerSecond, formatEta(total - done, tasksPerSecond)), done);
+    }
+
+    private static String formatEta(int remainingTasks, double tasksPerSecond) {
+        if (tasksPerSecond <= 0) {
+            return "--:--";
+        }
+        long seconds = (long) (remainingTasks / tasksPerSecond);
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collapses tasks of the same type and hash (copies of the same file): the first one leads and does the work, and the
+ * others subscribe to it and get its result.
+ *
+ * Not thread safe, only used under the ProcessPendingTask lock.
+ */
+class HashCollapseRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(HashCollapseRegistry.class.getName());
+    private final Map<String, ScheduledPendingTask> hashLeaders = new HashMap<>();
+    private final Map<PendingTask, ScheduledPendingTask> subscribedTasks = new HashMap<>();
+
+    /**
+     * Subscribe a task to the running task with the same hash, if there is one
+     *
+     * @param pendingTask task to collapse
+     * @return true if the task subscribed, false if it must be scheduled on its own
+     */
+    boolean subscribe(PendingTask pendingTask) {
+        String hashKey = getHashKey(pendingTask);
+        ScheduledPendingTask leader = hashKey == null ? null : hashLeaders.get(hashKey);
+        if (leader == null || leader.isCancelled() || leader.isExpired()) {
+            return false;
+        }
+        LOGGER.log(Level.FINE, "{0} collapsed into {1}", new Object[]{pendingTask, leader.getTask()});
+        leader.addSubscriber(pendingTask);
+        subscribedTasks.put(pendingTask, leader);
+        return true;
+    }
+
+    /**
+     * Make a newly scheduled task the one doing the work for its hash
+     *
+     * @param scheduledTask task that was not collapsed
+     */
+    void lead(ScheduledPendingTask scheduledTask) {
+        String hashKey = getHashKey(scheduledTask.getTask());
+        if (hashKey != null) {
+            hashLeaders.put(hashKey, scheduledTask);
+        }
+    }
+
+    /**
+     * A task left memory: it no longer does the work for its hash
+     *
+     * @param scheduledTask task that left
+     * @return its remaining subscribers, to be scheduled again on their own
+     */
+    List<PendingTask> leaderDone(ScheduledPendingTask scheduledTask) {
+        String hashKey = getHashKey(scheduledTask.getTask());
+        if (hashKey != null) {
+            hashLeaders.remove(hashKey, scheduledTask);
+        }
+        List<PendingTask> subscribers = scheduledTask.takeSubscribers();
+        for (PendingTask subscriber : subscribers) {
+            subscribedTasks.remove(subscriber);
+        }
+        return subscribers;
+    }
+
+    /**
+     * Drop a subscriber whose result was written, or that was cancelled
+     *
+     * @param subscriber task to drop
+     * @param leader task it is subscribed to
+     * @return false if it is no longer subscribed to that leader
+     */
+    boolean unsubscribe(PendingTask subscriber, ScheduledPendingTask leader) {
+        if (!subscribedTasks.remove(subscriber, leader)) {
+            return false;
+        }
+        leader.removeSubscriber(subscriber);
+        return true;
+    }
+
+    /**
+     * @param pendingTask task to look for
+     * @return the task it is subscribed to, or null
+     */
+    ScheduledPendingTask getLeader(PendingTask pendingTask) {
+        return subscribedTasks.get(pendingTask);
+    }
+
+    /**
+     * @return view of the subscribed tasks
+     */
+    Set<PendingTask> getSubscribedTasks() {
+        return Collections.unmodifiableSet(subscribedTasks.keySet());
+    }
+
+    /**
+     * @return the type and hash of the work the task does, or null if it can't be collapsed
+     */
+    private static String getHashKey(PendingTask pendingTask) {
+        String hash = pendingTask.getHashKey();
+        if (hash == null || hash.isEmpty() || pendingTask.isCancelled()) {
+            return null;
+        }
+        return pendingTask.getTaskType() + ":" + hash.toLowerCase();
+    }
+}
@@ -30,14 +30,12 @@ import io.polyswarm.app.apiclient.NotFoundException;
 import io.polyswarm.app.apiclient.RateLimitException;
 import io.polyswarm.app.apiclient.ServerException;
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
-import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.datamodel.TskCoreException;
 
@@ -53,6 +51,11 @@ public class PendingHashLookup extends PendingTask {
     private final Boolean cancelled;
 
     public PendingHashLookup(long abstractFileId, String md5Hash, Boolean cancelled) {
+        this(abstractFileId, md5Hash, cancelled, PendingTaskLane.INTERACTIVE);
+    }
+
+    public PendingHashLookup(long abstractFileId, String md5Hash, Boolean cancelled, PendingTaskLane lane) {
+        super(lane);
         this.abstractFileId = abstractFileId;
         this.md5Hash = md5Hash;
         this.cancelled = cancelled;
@@ -62,27 +65,38 @@ public class PendingHashLookup extends PendingTask {
         return md5Hash;
     }
 
+    @Override
+    public String getHashKey() {
+        return md5Hash;
+    }
+
+    @Override
     public Long getAbstractFileId() {
         return abstractFileId;
     }
 
     @Override
-    public boolean process(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException, TskCoreException {
-        if (cancelled) {
-            removeFromDB();
-            return true;
-        }
+    public boolean isCancelled() {
+        return cancelled;
+    }
 
-        return lookupHash(autopsyCase);
+    @Override
+    public PendingTaskType getTaskType() {
+        return PendingTaskType.HASH_LOOKUP;
+    }
+
+    @Override
+    public PendingTaskResult poll(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        return lookupHash();
     }
 
     /**
-     * Makes the hash search request on PolySwarm and updates the blackboard with results, either the ArtifactInstance,
-     * or the Not Found message
+     * Makes the hash search request on PolySwarm. Not found hashes give a not found result, and any other failure
+     * removes the task.
      *
-     * @param autopsyCase open case
+     * @return the result, or null if the scan is still running
      */
-    public boolean lookupHash(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, RateLimitException, IOException, TskCoreException {
+    public PendingTaskResult lookupHash() throws PolySwarmDbException, NotAuthorizedException, BadRequestException, RateLimitException, IOException {
         LOGGER.log(Level.FINE, "Looking up Hash {0}", md5Hash);
         try {
             ArtifactInstance artifactInstance = ApiClientV2.searchHash(md5Hash);
@@ -90,24 +104,18 @@ public class PendingHashLookup extends PendingTask {
             LOGGER.log(Level.FINE, "Got response{0}", artifactInstance.toString());
             if (!artifactInstance.windowClosed) {
                 // Exit if not done
-                return false;
+                return null;
             }
-
-            List<Tag> tags;
-            try {
-                tags = ApiClientV2.getTags(artifactInstance);
-            } catch (IOException ex) {
-                LOGGER.log(Level.WARNING, "Failed to read tags from PolySwarm", ex);
-                tags = new ArrayList<>();
-            }
-
-            updateBlackboard(autopsyCase, abstractFileId, artifactInstance, tags);
+            return PendingTaskResult.found(artifactInstance);
         } catch (NotFoundException ex) {
-            updateNotFound(autopsyCase, abstractFileId);
-        } finally {
+            return PendingTaskResult.notFound();
+        } catch (RequestAbortedException ex) {
+            // aborted, not failed: keep the row
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
             removeFromDB();
+            throw ex;
         }
-        return true;
     }
 
     @Override
@@ -121,8 +129,10 @@ public class PendingHashLookup extends PendingTask {
         }
     }
 
-    private void removeFromDB() throws PolySwarmDbException {
+    @Override
+    public void removeFromDB() throws PolySwarmDbException {
         getDbInstance().deletePendingHashLookup(this);
+        markRemoved();
     }
 
     @Override
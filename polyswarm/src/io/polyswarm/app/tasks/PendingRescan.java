@@ -30,14 +30,12 @@ import io.polyswarm.app.apiclient.NotFoundException;
 import io.polyswarm.app.apiclient.RateLimitException;
 import io.polyswarm.app.apiclient.ServerException;
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
-import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.datamodel.TskCoreException;
 
@@ -53,6 +51,11 @@ public class PendingRescan extends PendingTask {
     private final Boolean cancelled;
 
     public PendingRescan(Long abstractFileID, String sha256Hash, String uuid, Boolean cancelled) {
+        this(abstractFileID, sha256Hash, uuid, cancelled, PendingTaskLane.INTERACTIVE);
+    }
+
+    public PendingRescan(Long abstractFileID, String sha256Hash, String uuid, Boolean cancelled, PendingTaskLane lane) {
+        super(lane);
         this.abstractFileID = abstractFileID;
         this.sha256Hash = sha256Hash;
         this.rescanId = uuid;
@@ -70,77 +73,86 @@ public class PendingRescan extends PendingTask {
         return sha256Hash;
     }
 
+    @Override
+    public String getHashKey() {
+        return sha256Hash;
+    }
+
     /**
      * @return the abstractFileID
      */
+    @Override
     public Long getAbstractFileId() {
         return abstractFileID;
     }
 
     @Override
-    public boolean process(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
-        if (cancelled) {
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public PendingTaskType getTaskType() {
+        return PendingTaskType.RESCAN;
+    }
+
+    @Override
+    public PendingTaskStage getFirstStage() {
+        return rescanId.isEmpty() ? PendingTaskStage.SUBMIT : PendingTaskStage.POLL;
+    }
+
+    @Override
+    public PendingTask submit(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        try {
+            return submitRescan();
+        } catch (RequestAbortedException ex) {
+            // aborted, not failed: keep the row
+            throw ex;
+        } catch (IOException ex) {
             removeFromDB();
-            return true;
-        } else if (rescanId.isEmpty()) {
-            try {
-                submitRescan();
-                return false;
-            } catch (IOException ex) {
-                removeFromDB();
-                throw ex;
-            }
-        } else {
-            try {
-                return checkSubmission(autopsyCase);
-            } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "Error checking rescan in PolySwarm.");
-                removeFromDB();
-                throw ex;
-            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public PendingTaskResult poll(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        try {
+            return checkSubmission();
+        } catch (RequestAbortedException ex) {
+            // aborted, not failed: keep the row
+            throw ex;
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Error checking rescan in PolySwarm.");
+            removeFromDB();
+            throw ex;
         }
     }
 
     /**
-     * Uploads the file to PolySwarm, and updates the task with the submissionId
+     * Requests a rescan from PolySwarm, and updates the task with the rescan id
      *
-     * @param autopsyCase open case
+     * @return copy of this task with the rescan id
      */
-    public void submitRescan() throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException, TskCoreException {
+    public PendingRescan submitRescan() throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException {
         ArtifactInstance artifactInstance = ApiClientV2.rescanFile(sha256Hash);
         getDbInstance().updatePendingRescanId(abstractFileID, artifactInstance.id);
+        return new PendingRescan(abstractFileID, sha256Hash, artifactInstance.id, cancelled, getLane());
     }
 
     /**
+     * Checks to see if a rescan has finished.
      *
-     * Checks to see if a scan has finished. Fills in the ArtifactInstance if so. Also, deletes the task on successful
-     * scan completion.
-     *
-     * @param autopsyCase open case
+     * @return the result if finished, else null
      */
-    public boolean checkSubmission(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException, TskCoreException {
+    public PendingTaskResult checkSubmission() throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException {
         LOGGER.log(Level.FINE, "Checking Rescan {0}", abstractFileID);
         ArtifactInstance artifactInstance = ApiClientV2.getSubmissionStatus(rescanId);
         LOGGER.log(Level.FINE, "Got response{0}", artifactInstance.toString());
         if (!artifactInstance.windowClosed) {
             // Exit if not done
-            return false;
+            return null;
         }
-
-        List<Tag> tags;
-        try {
-            tags = ApiClientV2.getTags(artifactInstance);
-        } catch (IOException ex) {
-            LOGGER.log(Level.WARNING, "Failed to read tags from PolySwarm", ex);
-            tags = new ArrayList<>();
-        }
-
-        try {
-            updateBlackboard(autopsyCase, abstractFileID, artifactInstance, tags);
-        } finally {
-            removeFromDB();
-        }
-        return true;
+        return PendingTaskResult.found(artifactInstance);
     }
 
     @Override
@@ -154,8 +166,10 @@ public class PendingRescan extends PendingTask {
         }
     }
 
-    private void removeFromDB() throws PolySwarmDbException {
+    @Override
+    public void removeFromDB() throws PolySwarmDbException {
         getDbInstance().deletePendingRescan(this);
+        markRemoved();
     }
 
     @Override
@@ -25,19 +25,18 @@ package io.polyswarm.app.tasks;
 
 import io.polyswarm.app.apiclient.ApiClientV2;
 import io.polyswarm.app.apiclient.BadRequestException;
+import io.polyswarm.app.apiclient.ContentSpool;
 import io.polyswarm.app.apiclient.NotAuthorizedException;
 import io.polyswarm.app.apiclient.NotFoundException;
 import io.polyswarm.app.apiclient.RateLimitException;
 import io.polyswarm.app.apiclient.ServerException;
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
-import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -50,11 +49,22 @@ public class PendingSubmission extends PendingTask {
     private static final Logger LOGGER = Logger.getLogger(PendingSubmission.class.getName());
     private final String submissionId;
     private final Long abstractFileID;
+    private final String md5Hash;
     private final boolean cancelled;
 
     public PendingSubmission(Long abstractFileID, String uuid, boolean cancelled) {
+        this(abstractFileID, uuid, cancelled, PendingTaskLane.INTERACTIVE);
+    }
+
+    public PendingSubmission(Long abstractFileID, String uuid, boolean cancelled, PendingTaskLane lane) {
+        this(abstractFileID, uuid, "", cancelled, lane);
+    }
+
+    public PendingSubmission(Long abstractFileID, String uuid, String md5Hash, boolean cancelled, PendingTaskLane lane) {
+        super(lane);
         this.abstractFileID = abstractFileID;
         this.submissionId = uuid;
+        this.md5Hash = md5Hash == null ? "" : md5Hash;
         this.cancelled = cancelled;
     }
 
@@ -65,35 +75,73 @@ public class PendingSubmission extends PendingTask {
         return submissionId;
     }
 
+    /**
+     * @return md5 of the file, or empty if unknown
+     */
+    public String getMd5Hash() {
+        return md5Hash;
+    }
+
+    /**
+     * Submissions of identical files are collapsed, when the md5 is known
+     */
+    @Override
+    public String getHashKey() {
+        return md5Hash.isEmpty() ? null : md5Hash;
+    }
+
     /**
      * @return the abstractFileID
      */
+    @Override
     public Long getAbstractFileId() {
         return abstractFileID;
     }
 
     @Override
-    public boolean process(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
-        if (cancelled) {
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public PendingTaskType getTaskType() {
+        return PendingTaskType.SUBMISSION;
+    }
+
+    @Override
+    public PendingTaskStage getFirstStage() {
+        return submissionId.isEmpty() ? PendingTaskStage.SUBMIT : PendingTaskStage.POLL;
+    }
+
+    @Override
+    public PendingTask submit(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        try {
+            return submitFile(autopsyCase);
+        } catch (ServerException ex) {
+            // keep the task (and its spooled content) so the upload is retried on a later pass
+            LOGGER.log(Level.WARNING, "PolySwarm server error while submitting file, will retry.");
+            throw ex;
+        } catch (RequestAbortedException ex) {
+            // aborted, not failed: keep the row
+            throw ex;
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Error submitting file to PolySwarm.");
             removeFromDB();
-            return true;
-        } else if (submissionId.isEmpty()) {
-            try {
-                submitFile(autopsyCase);
-                return false;
-            } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "Error submitting file to PolySwarm.");
-                removeFromDB();
-                throw ex;
-            }
-        } else {
-            try {
-                return checkSubmission(autopsyCase);
-            } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "Error checking submission in PolySwarm.");
-                removeFromDB();
-                throw ex;
-            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public PendingTaskResult poll(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        try {
+            return checkSubmission();
+        } catch (RequestAbortedException ex) {
+            // aborted, not failed: keep the row
+            throw ex;
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Error checking submission in PolySwarm.");
+            removeFromDB();
+            throw ex;
         }
     }
 
@@ -101,44 +149,57 @@ public class PendingSubmission extends PendingTask {
      * Uploads the file to PolySwarm, and updates the task with the submissionId
      *
      * @param autopsyCase open case
+     * @return copy of this task with the submissionId
      */
-    public void submitFile(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, ServerException, IOException, TskCoreException {
+    public PendingSubmission submitFile(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, ServerException, IOException, TskCoreException {
         AbstractFile abstractFile = autopsyCase.getSleuthkitCase().getAbstractFileById(abstractFileID);
-        ArtifactInstance artifactInstance = ApiClientV2.submitFile(abstractFile);
+        UploadProgressMeter uploadMeter = new UploadProgressMeter(getProgressHandle());
+        ArtifactInstance artifactInstance;
+        try {
+            artifactInstance = ApiClientV2.submitFile(abstractFile, getSpoolDirectory(), uploadMeter);
+        } finally {
+            uploadMeter.finish();
+        }
         getDbInstance().updatePendingSubmissionId(abstractFileID, artifactInstance.id);
+        ContentSpool.evict(getSpoolDirectory(), abstractFileID);
         LOGGER.log(Level.INFO, "Updated Submission on {0}", abstractFileID.toString());
+
+        recordUploadStats(uploadMeter);
+        return new PendingSubmission(abstractFileID, artifactInstance.id, md5Hash, cancelled, getLane());
     }
 
     /**
+     * Log the throughput of the finished upload and store it for later analysis
      *
-     * Checks to see if a scan has finished. Fills in the ArtifactInstance if so. Also, deletes the task on successful
-     * scan completion.
+     * @param uploadMeter meter that watched the upload
+     */
+    private void recordUploadStats(UploadProgressMeter uploadMeter) {
+        long bytes = uploadMeter.getBytesSent();
+        double seconds = uploadMeter.getElapsedMillis() / 1000d;
+        double megabytesPerSecond = uploadMeter.getAverageBytesPerSecond() / (1024d * 1024d);
+        LOGGER.log(Level.INFO, String.format("Uploaded file %d (%d bytes) in %.2f s, %.2f MB/s.",
+                abstractFileID, bytes, seconds, megabytesPerSecond));
+        try {
+            getDbInstance().newUploadStats(abstractFileID, bytes, uploadMeter.getElapsedMillis());
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.WARNING, "Failed to record upload throughput.", ex);
+        }
+    }
+
+    /**
+     * Checks to see if a scan has finished.
      *
-     * @param autopsyCase open case
+     * @return the result if finished, else null
      */
-    public boolean checkSubmission(Case autopsyCase) throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException, TskCoreException {
+    public PendingTaskResult checkSubmission() throws PolySwarmDbException, NotAuthorizedException, BadRequestException, NotFoundException, RateLimitException, IOException {
         LOGGER.log(Level.FINE, "Checking Submission {0}", abstractFileID);
         ArtifactInstance artifactInstance = ApiClientV2.getSubmissionStatus(submissionId);
         LOGGER.log(Level.FINE, "Got response {0}", artifactInstance.toString());
         if (!artifactInstance.windowClosed) {
             // Exit if not done
-            return false;
-        }
-
-        List<Tag> tags;
-        try {
-            tags = ApiClientV2.getTags(artifactInstance);
-        } catch (IOException ex) {
-            LOGGER.log(Level.WARNING, "Failed to read tags from PolySwarm", ex);
-            tags = new ArrayList<>();
+            return null;
         }
-
-        try {
-            updateBlackboard(autopsyCase, abstractFileID, artifactInstance, tags);
-        } finally {
-            removeFromDB();
-        }
-        return true;
+        return PendingTaskResult.found(artifactInstance);
     }
 
     @Override
@@ -152,8 +213,11 @@ public class PendingSubmission extends PendingTask {
         }
     }
 
-    private void removeFromDB() throws PolySwarmDbException {
+    @Override
+    public void removeFromDB() throws PolySwarmDbException {
+        ContentSpool.evict(getSpoolDirectory(), abstractFileID);
         getDbInstance().deletePendingSubmission(this);
+        markRemoved();
     }
 
     @Override
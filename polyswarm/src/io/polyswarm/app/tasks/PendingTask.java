@@ -23,8 +23,10 @@
  */
 package io.polyswarm.app.tasks;
 
+import io.polyswarm.app.BlackboardTypeCache;
 import io.polyswarm.app.PolySwarmController;
 import io.polyswarm.app.PolySwarmModule;
+import io.polyswarm.app.apiclient.ApiClientV2;
 import io.polyswarm.app.apiclient.BadRequestException;
 import io.polyswarm.app.apiclient.RateLimitException;
 import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
@@ -33,25 +35,28 @@ import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
 import io.polyswarm.app.datamodel.PolySwarmDb;
 import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.netbeans.api.progress.ProgressHandle;
 import org.openide.util.Cancellable;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
-import org.sleuthkit.autopsy.ingest.IngestServices;
-import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.TskCoreException;
-import org.sleuthkit.datamodel.TskData;
 
 /**
  * PendingTask abstract class with helper functions for updating blackboard.
  *
- * All children classes must implement `process(Case autopsyCase)`
+ * A task is processed in stages (see PendingTaskStage). All children classes must implement `poll(Case autopsyCase)`
+ * and `removeFromDB()`, and tasks that start with a request to PolySwarm also override `submit(Case autopsyCase)`.
  */
 public abstract class PendingTask implements Cancellable {
 
@@ -60,103 +65,347 @@ public abstract class PendingTask implements Cancellable {
             + "on a model of present engine detections weighted by past performance, indicating the probability a given "
             + "file contains malware.";
     private static final String NOT_FOUND = "Not Found in PolySwarm";
+    private static final String TIMED_OUT = "Timed out waiting for PolySwarm";
+    private final PendingTaskLane lane;
+    private ProgressHandle progressHandle;
+    private volatile boolean removed;
+    private volatile PolySwarmDb dbInstance;
+    private volatile File spoolDirectory;
+    private long createdAtMillis;
+    private int attempts;
+    private int priority;
+    private volatile String fileName;
 
-    public abstract boolean process(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException;
+    protected PendingTask() {
+        this(PendingTaskLane.INTERACTIVE);
+    }
+
+    protected PendingTask(PendingTaskLane lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * @return the stage this task starts in
+     */
+    public PendingTaskStage getFirstStage() {
+        return PendingTaskStage.POLL;
+    }
+
+    /**
+     * Send the initial request to PolySwarm, and record its id in the db.
+     *
+     * @param autopsyCase open case
+     * @return a copy of this task with the request id filled in
+     */
+    public PendingTask submit(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException {
+        return this;
+    }
+
+    /**
+     * Check if the scan has finished.
+     *
+     * @param autopsyCase open case
+     * @return the result, or null if the scan is still running
+     */
+    public abstract PendingTaskResult poll(Case autopsyCase) throws PolySwarmDbException, BadRequestException, RateLimitException, IOException, TskCoreException;
+
+    /**
+     * Fetch the tags for a finished scan. Tags are optional, so failures leave the list empty.
+     *
+     * @param result result from poll
+     */
+    public void enrich(PendingTaskResult result) {
+        if (result.isNotFound()) {
+            return;
+        }
+        try {
+            result.setTags(ApiClientV2.getTags(result.getArtifactInstance()));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to read tags from PolySwarm", ex);
+        }
+    }
+
+    /**
+     * Build the blackboard write of a result, for this task's file and the files of the tasks collapsed into it
+     *
+     * @param autopsyCase open case
+     * @param result enriched result, or null
+     * @param subscriberFileIds files of the tasks waiting on the same hash
+     * @return the write, or null if there is nothing to write
+     */
+    public BlackboardWrite prepareWrite(Case autopsyCase, PendingTaskResult result, List<Long> subscriberFileIds) throws TskCoreException {
+        List<Long> abstractFileIds = new ArrayList<>();
+        abstractFileIds.add(getAbstractFileId());
+        abstractFileIds.addAll(subscriberFileIds);
+        return prepareWrite(autopsyCase, abstractFileIds, result);
+    }
+
+    /**
+     * Build the blackboard write of a result for a list of files
+     *
+     * @param autopsyCase open case
+     * @param abstractFileIds files the result is for
+     * @param result enriched result, or null
+     * @return the write, or null if there is nothing to write
+     */
+    public static BlackboardWrite prepareWrite(Case autopsyCase, List<Long> abstractFileIds, PendingTaskResult result) throws TskCoreException {
+        if (result == null) {
+            return null;
+        }
+        if (result.isTimedOut()) {
+            return newCommentWrite(autopsyCase, abstractFileIds, TIMED_OUT);
+        } else if (result.isNotFound()) {
+            return newCommentWrite(autopsyCase, abstractFileIds, NOT_FOUND);
+        }
+        return newResultWrite(autopsyCase, abstractFileIds, result.getArtifactInstance(), result.getTags());
+    }
+
+    /**
+     * Delete this task from the pending tables
+     */
+    public abstract void removeFromDB() throws PolySwarmDbException;
+
+    /**
+     * @return true once this task has been deleted from the pending tables, so it won't be retried
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    protected void markRemoved() {
+        removed = true;
+    }
+
+    /**
+     * @return id of the file this task is about
+     */
+    public abstract Long getAbstractFileId();
+
+    /**
+     * Tasks of the same type with the same hash do the same work, so they are collapsed into one and its result is
+     * written for all their files.
+     *
+     * @return hash identifying the work, or null if this task can't be collapsed
+     */
+    public String getHashKey() {
+        return null;
+    }
 
     @Override
     public abstract boolean cancel();
 
+    /**
+     * @return true if the user asked for this task to be cancelled
+     */
+    public abstract boolean isCancelled();
+
+    /**
+     * @return the kind of task, used to pick its concurrency limit
+     */
+    public abstract PendingTaskType getTaskType();
+
+    /**
+     * @return the priority lane this task runs in
+     */
+    public PendingTaskLane getLane() {
+        return lane;
+    }
+
     public String getHumanReadableName() {
         return "Task";
     }
 
-    public PolySwarmDb getDbInstance() throws PolySwarmDbException {
-        return PolySwarmDb.getInstance();
+    /**
+     * @return the ProgressHandle showing this task, or null if it has none yet
+     */
+    public ProgressHandle getProgressHandle() {
+        return progressHandle;
+    }
+
+    public void setProgressHandle(ProgressHandle progressHandle) {
+        this.progressHandle = progressHandle;
     }
 
     /**
-     * Adds a hash not found message to the artifact
+     * Set the age and attempt count read from the db
      *
-     * @param autopsyCase open case
-     * @param abstractFileId id of the file in question
+     * @param createdAtMillis when the task was added, or 0 if unknown
+     * @param attempts submit or poll attempts so far
      */
-    public static void updateNotFound(Case autopsyCase, Long abstractFileId) throws TskCoreException {
-        AbstractFile abstractFile = autopsyCase.getSleuthkitCase().getAbstractFileById(abstractFileId);
-        BlackboardArtifact artifact = getBlackboardArtifact(autopsyCase, abstractFile, PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME);
-        artifact.addAttribute(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_COMMENT, PolySwarmModule.getModuleName(), NOT_FOUND));
+    public void setAttemptHistory(long createdAtMillis, int attempts) {
+        this.createdAtMillis = createdAtMillis;
+        this.attempts = attempts;
     }
 
     /**
-     * Fills in all the blackboard fields under a new BlackboardArtifact. Also sets the known status of an AbstractFile
+     * @return when the task was added, or 0 if unknown
+     */
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    /**
+     * @return submit or poll attempts recorded in the db
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param priority risk score from RiskScorer, higher is processed first
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param fileName name of the file, kept so the UI can show it without a case db query
+     */
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return name of the file, or null if it isn't known
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Tie this task to the db and spool directory of its case. A closing case's tasks can still run after the next case
+     * opened, so they never look these up from the current case.
+     *
+     * @param dbInstance db of the task's case
+     * @param spoolDirectory spool directory of the task's case
+     */
+    void bind(PolySwarmDb dbInstance, File spoolDirectory) {
+        this.dbInstance = dbInstance;
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public PolySwarmDb getDbInstance() throws PolySwarmDbException {
+        PolySwarmDb db = dbInstance;
+        if (db == null) {
+            throw new PolySwarmDbException("Task is not bound to a case db: " + toString()); // NON-NLS
+        }
+        return db;
+    }
+
+    /**
+     * @return spool directory of the task's case, or null if the task isn't bound to one
+     */
+    protected File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    private static BlackboardWrite newCommentWrite(Case autopsyCase, List<Long> abstractFileIds, String comment) throws TskCoreException {
+        Map<AbstractFile, List<BlackboardAttribute>> results = new LinkedHashMap<>();
+        for (Long abstractFileId : abstractFileIds) {
+            List<BlackboardAttribute> attributes = new ArrayList<>();
+            attributes.add(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_COMMENT, PolySwarmModule.getModuleName(), comment));
+            results.put(autopsyCase.getSleuthkitCase().getAbstractFileById(abstractFileId), attributes);
+        }
+        return new BlackboardWrite(results, false, false);
+    }
+
+    /**
+     * Build the write of a result for every file sharing it
      *
      * Fills in the following attributes: PolyScore, Sha256, Assertions, Malware Families, Tags
      *
-     * @param autopsyCase open case
-     * @param abstractFileId id of the file in question
-     * @param artifactInstance response from PolySwarm
+     * Files are set to known bad when polyscore > 0.7 and at least 2 malicious responses
      */
-    public static void updateBlackboard(Case autopsyCase, Long abstractFileId, ArtifactInstance artifactInstance, List<Tag> tags) throws TskCoreException {
+    private static BlackboardWrite newResultWrite(Case autopsyCase, List<Long> abstractFileIds, ArtifactInstance artifactInstance, List<Tag> tags) throws TskCoreException {
         PolySwarmMarketplaceSettings apiSettings = new PolySwarmMarketplaceSettings();
-        AbstractFile abstractFile = autopsyCase.getSleuthkitCase().getAbstractFileById(abstractFileId);
-
-        // Set file to known bad when polyscore > 0.7 and at least 2 malicious responses
-        if (artifactInstance.detection.malicious >= 2 && Double.parseDouble(artifactInstance.polyscore) > 0.7d) {
-            abstractFile.setKnown(TskData.FileKnown.BAD);
+        Map<AbstractFile, List<BlackboardAttribute>> results = new LinkedHashMap<>();
+        for (Long abstractFileId : abstractFileIds) {
+            results.put(autopsyCase.getSleuthkitCase().getAbstractFileById(abstractFileId),
+                    getResultAttributes(autopsyCase, artifactInstance, tags, apiSettings.showPolyScore()));
         }
+        boolean knownBad = artifactInstance.detection.malicious >= 2 && Double.parseDouble(artifactInstance.polyscore) > 0.7d;
+        return new BlackboardWrite(results, true, knownBad);
+    }
 
-        // Add all results attributes
-        BlackboardArtifact artifact = getBlackboardArtifact(autopsyCase, abstractFile, PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME);
-        if (apiSettings.showPolyScore()) {
-            addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_POLYSCORE_DESCRIPTION_NAME, POLYSCORE_DESCRIPTION);
+    /**
+     * Build the attributes of a result
+     *
+     * @param autopsyCase open case
+     * @param artifactInstance response from PolySwarm
+     * @param tags tags of the artifact
+     * @param showPolyScore whether to include the PolyScore description
+     * @return the attributes whose types exist
+     */
+    private static List<BlackboardAttribute> getResultAttributes(Case autopsyCase, ArtifactInstance artifactInstance, List<Tag> tags, boolean showPolyScore) throws TskCoreException {
+        List<BlackboardAttribute> attributes = new ArrayList<>();
+        if (showPolyScore) {
+            collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_POLYSCORE_DESCRIPTION_NAME, POLYSCORE_DESCRIPTION));
         }
 
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_POLYSCORE_NAME, artifactInstance.polyscore);
-        artifact.addAttribute(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_HASH_SHA2_256, PolySwarmModule.getModuleName(), artifactInstance.sha256));
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_FIRST_SEEN_NAME, artifactInstance.firstSeen);
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_LAST_SCANNED_NAME, artifactInstance.lastScanned);
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_TOTAL_DETECTIONS_NAME, artifactInstance.detection.total);
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_MALICIOUS_DETECTIONS_NAME, artifactInstance.detection.malicious);
-        addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_BENIGN_DETECTIONS_NAME, artifactInstance.detection.benign);
-        // notify UI to update and display this result
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_POLYSCORE_NAME, artifactInstance.polyscore));
+        attributes.add(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_HASH_SHA2_256, PolySwarmModule.getModuleName(), artifactInstance.sha256));
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_FIRST_SEEN_NAME, artifactInstance.firstSeen));
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_LAST_SCANNED_NAME, artifactInstance.lastScanned));
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_TOTAL_DETECTIONS_NAME, artifactInstance.detection.total));
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_MALICIOUS_DETECTIONS_NAME, artifactInstance.detection.malicious));
+        collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_BENIGN_DETECTIONS_NAME, artifactInstance.detection.benign));
 
         for (Assertion assertion : artifactInstance.assertions) {
             if (assertion.mask) {
-                addAssertion(autopsyCase, artifact, assertion);
+                collect(attributes, newAssertionAttribute(autopsyCase, assertion));
             }
         }
 
         for (Assertion assertion : artifactInstance.assertions) {
             if (!assertion.malwareFamily.isEmpty()) {
-                addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_MALWARE_FAMILY_NAME, assertion.malwareFamily);
+                collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_MALWARE_FAMILY_NAME, assertion.malwareFamily));
             }
         }
 
         for (Tag tag : tags) {
-            addArtifactAttribute(autopsyCase, artifact, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_TAG_NAME, tag.name);
+            collect(attributes, newArtifactAttribute(autopsyCase, PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_TAG_NAME, tag.name));
         }
-
-        IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(PolySwarmModule.getModuleName(),
-                autopsyCase.getSleuthkitCase().getArtifactType(PolySwarmController.POLYSWARM_ARTIFACT_TYPE_NAME)));
+        return attributes;
     }
 
     /**
-     *
-     * Adds an assertion to the blackboard. Creates a new BlackboardAttribute.Type per assertion author
+     * Builds the attribute for an assertion. Creates a new BlackboardAttribute.Type per assertion author
      *
      * @param autopsyCase open case
-     * @param artifact BlackboardArtifact to add the result
      * @param assertion Assertion from PolySwarm
+     * @return the attribute, or null if its type couldn't be created
      */
-    public static void addAssertion(Case autopsyCase, BlackboardArtifact artifact, Assertion assertion) throws TskCoreException {
+    private static BlackboardAttribute newAssertionAttribute(Case autopsyCase, Assertion assertion) {
         String attributeName = String.format(PolySwarmController.POLYSWARM_ARTIFACT_ATTRIBUTE_ASSERTION_NAME_FORMAT, assertion.name.toUpperCase());
-        PolySwarmController.createCustomArtifactAttribute(autopsyCase, attributeName, BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, assertion.name);
-        addArtifactAttribute(autopsyCase, artifact, attributeName, assertion.getHumanReadableVerdict());
+        try {
+            // known engines come from the type cache, only a new engine creates its type
+            BlackboardAttribute.Type attributeType = BlackboardTypeCache.getInstance(autopsyCase).getOrCreateAttributeType(attributeName,
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, assertion.name);
+            return new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), assertion.getHumanReadableVerdict());
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to create custom artifact attribute type", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the attribute to the list, skipping attributes whose type doesn't exist
+     */
+    private static void collect(List<BlackboardAttribute> attributes, BlackboardAttribute attribute) {
+        if (attribute != null) {
+            attributes.add(attribute);
+        }
     }
 
     /**
      * Creates a new BlackboardArtifact for tracking scan/lookup results.
      *
-     * A new artifact is added per scan/lookup
+     * Always adds a new artifact. Whether upsert mode reuses the file's existing artifact instead is decided by
+     * BlackboardWrite.plan, before this is called.
      *
      * @param autopsyCase Open case
      * @param abstractFile File in in being updated
@@ -166,62 +415,76 @@ public abstract class PendingTask implements Cancellable {
      */
     public static BlackboardArtifact getBlackboardArtifact(Case autopsyCase, AbstractFile abstractFile, String artifactName) throws TskCoreException {
         // New artifact per result
-        return abstractFile.newArtifact(autopsyCase.getSleuthkitCase().getArtifactType(artifactName).getTypeID());
+        return abstractFile.newArtifact(BlackboardTypeCache.getInstance(autopsyCase).getArtifactType(artifactName).getTypeID());
     }
 
     /**
-     * Adds a String field to the blackboard
+     * Finds the file's newest artifact of the given type
      *
-     * @param autopsyCase open case
-     * @param artifact BlackboardArtifact to add the result
-     * @param attributeName String name of the attribute to add the data in
-     * @param data String data to store in blackboard
+     * @param autopsyCase Open case
+     * @param abstractFile File to look on
+     * @param artifactName Name of the Artifact type
+     *
+     * @return the newest artifact, or null if the file has none
+     */
+    public static BlackboardArtifact findBlackboardArtifact(Case autopsyCase, AbstractFile abstractFile, String artifactName) throws TskCoreException {
+        BlackboardArtifact newest = null;
+        for (BlackboardArtifact artifact : abstractFile.getArtifacts(BlackboardTypeCache.getInstance(autopsyCase).getArtifactType(artifactName).getTypeID())) {
+            if (newest == null || artifact.getArtifactID() > newest.getArtifactID()) {
+                newest = artifact;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Builds a String attribute, without writing it
+     *
+     * @return the attribute, or null if the attribute type doesn't exist
      */
-    public static void addArtifactAttribute(Case autopsyCase, BlackboardArtifact artifact, String attributeName, String data) throws TskCoreException {
-        BlackboardAttribute.Type attributeType = autopsyCase.getSleuthkitCase().getAttributeType(attributeName);
+    private static BlackboardAttribute newArtifactAttribute(Case autopsyCase, String attributeName, String data) throws TskCoreException {
+        BlackboardAttribute.Type attributeType = BlackboardTypeCache.getInstance(autopsyCase).getAttributeType(attributeName);
         if (attributeType == null) {
-            return;
+            return null;
         }
 
-        artifact.addAttribute(new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data));
+        return new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data);
     }
 
     /**
-     * Adds a double field to the blackboard
+     * Builds a double attribute, without writing it
      *
-     * @param autopsyCase open case
-     * @param artifact BlackboardArtifact to add the result
-     * @param attributeName String name of the attribute to add the data in
-     * @param data double data to store in blackboard
+     * @return the attribute, or null if the attribute type doesn't exist
      */
-    public static void addArtifactAttribute(Case autopsyCase, BlackboardArtifact artifact, String attributeName, double data) throws TskCoreException {
-        BlackboardAttribute.Type attributeType = autopsyCase.getSleuthkitCase().getAttributeType(attributeName);
+    private static BlackboardAttribute newArtifactAttribute(Case autopsyCase, String attributeName, double data) throws TskCoreException {
+        BlackboardAttribute.Type attributeType = BlackboardTypeCache.getInstance(autopsyCase).getAttributeType(attributeName);
         if (attributeType == null) {
-            return;
+            return null;
         }
 
-        artifact.addAttribute(new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data));
+        return new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data);
     }
 
     /**
-     * Adds an int field to the blackboard
+     * Builds a int attribute, without writing it
      *
-     * @param autopsyCase open case
-     * @param artifact BlackboardArtifact to add the result
-     * @param attributeName String name of the attribute to add the data in
-     * @param data int data to store in blackboard
+     * @return the attribute, or null if the attribute type doesn't exist
      */
-    public static void addArtifactAttribute(Case autopsyCase, BlackboardArtifact artifact, String attributeName, int data) throws TskCoreException {
-        BlackboardAttribute.Type attributeType = autopsyCase.getSleuthkitCase().getAttributeType(attributeName);
+    private static BlackboardAttribute newArtifactAttribute(Case autopsyCase, String attributeName, int data) throws TskCoreException {
+        BlackboardAttribute.Type attributeType = BlackboardTypeCache.getInstance(autopsyCase).getAttributeType(attributeName);
         if (attributeType == null) {
-            return;
+            return null;
         }
 
-        artifact.addAttribute(new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data));
+        return new BlackboardAttribute(attributeType, PolySwarmModule.getModuleName(), data);
     }
 
+    /**
+     * @param cancellable called when the user cancels the progress bar
+     * @return progress bar for this task
+     */
     @NbBundle.Messages({"PendingTask.populatingDb.status=Processing %s."})
-    public ProgressHandle getPendingTaskProgressHandle() {
-        return ProgressHandle.createHandle(String.format(io.polyswarm.app.tasks.Bundle.PendingTask_populatingDb_status(), getHumanReadableName()), this);
+    public ProgressHandle getPendingTaskProgressHandle(Cancellable cancellable) {
+        return ProgressHandle.createHandle(String.format(io.polyswarm.app.tasks.Bundle.PendingTask_populatingDb_status(), getHumanReadableName()), cancellable);
     }
 }
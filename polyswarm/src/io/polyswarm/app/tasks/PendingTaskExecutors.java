@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the executors and concurrency limits that pending tasks run with.
+ *
+ * On a JDK with virtual threads, the network stages start a virtual thread for every task taken from their queue.
+ * Otherwise each stage has a platform-thread pool with a fixed number of consumers. In both modes the API calls
+ * themselves are gated by one request semaphore, sized by getMaxConcurrentRequests(), and each PendingTaskType has its
+ * own limit, so one type can't starve the others. On virtual threads the per-type limits are raised to at least the
+ * request limit, so the request semaphore is the one that binds.
+ *
+ * The module targets Java 8, so the virtual thread executor is looked up by reflection.
+ */
+public final class PendingTaskExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(PendingTaskExecutors.class.getName());
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+    private static final int DEFAULT_ENRICH_THREADS = 2;
+
+    private PendingTaskExecutors() {
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); // NON-NLS
+        } catch (NoSuchMethodException | SecurityException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param settings module settings
+     * @return true if tasks should run on virtual threads
+     */
+    public static boolean useVirtualThreads(PolySwarmMarketplaceSettings settings) {
+        return settings.useVirtualThreads() && VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * How many consumers a pipeline stage gets.
+     *
+     * The network stages are sized from the per-type limits, or from the API request limit on virtual threads, where
+     * the budget only sizes the stage queue. Persisting is a single thread since blackboard writes are serialized by
+     * the case db anyway.
+     *
+     * @param stage pipeline stage
+     * @param settings module settings
+     * @return consumer count for the stage
+     */
+    public static int getStageThreadBudget(PendingTaskStage stage, PolySwarmMarketplaceSettings settings) {
+        boolean virtualThreads = useVirtualThreads(settings);
+        switch (stage) {
+            case SUBMIT:
+                return virtualThreads ? settings.getMaxConcurrentRequests()
+                        : settings.getWorkerLimit(PendingTaskType.SUBMISSION.getSettingsKey()) + settings.getWorkerLimit(PendingTaskType.RESCAN.getSettingsKey());
+            case POLL:
+                return virtualThreads ? settings.getMaxConcurrentRequests() : getWorkerCount(settings);
+            case ENRICH:
+                return virtualThreads ? settings.getMaxConcurrentRequests() : DEFAULT_ENRICH_THREADS;
+            case PERSIST:
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Create the executor for a pipeline stage and start its consumers on it. With virtual threads enabled and
+     * supported, a network stage runs every task on its own virtual thread; otherwise the stage gets a platform-thread
+     * pool of getStageThreadBudget() consumers.
+     *
+     * @param stageQueue stage to start
+     * @param worker work to do for each task
+     * @param settings module settings
+     * @return the executor, to shut down with the stage
+     */
+    public static ExecutorService startStage(PendingTaskStageQueue stageQueue, PendingTaskStageQueue.StageWorker worker, PolySwarmMarketplaceSettings settings) {
+        PendingTaskStage stage = stageQueue.getStage();
+        if (useVirtualThreads(settings) && stage != PendingTaskStage.PERSIST) {
+            try {
+                ExecutorService executor = (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+                stageQueue.startPerTask(executor, worker);
+                return executor;
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Failed to create virtual thread executor, falling back to a thread pool.", ex);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(getStageThreadBudget(stage, settings),
+                new ThreadFactoryBuilder().setNameFormat("PolySwarm-" + stage + "-Thread-%d").build());
+        stageQueue.start(executor, worker);
+        return executor;
+    }
+
+    /**
+     * Create the semaphore a task must hold while it calls the API
+     *
+     * @param settings module settings
+     * @return semaphore with getMaxConcurrentRequests() permits
+     */
+    public static Semaphore newRequestPermits(PolySwarmMarketplaceSettings settings) {
+        return new Semaphore(Math.max(1, settings.getMaxConcurrentRequests()));
+    }
+
+    /**
+     * Create the permits a task must hold while it runs.
+     *
+     * Each type has its own limit. On virtual threads the limit is raised to at least getMaxConcurrentRequests(), so it
+     * stays a sub-cap and the request semaphore is what bounds the API calls. Bulk tasks may use all but
+     * getInteractiveReserved() of it.
+     *
+     * @param settings module settings
+     * @return permits for each PendingTaskType
+     */
+    public static PendingTaskPermits newWorkerPermits(PolySwarmMarketplaceSettings settings) {
+        Map<PendingTaskType, Semaphore> permits = new EnumMap<>(PendingTaskType.class);
+        Map<PendingTaskType, Semaphore> bulkPermits = new EnumMap<>(PendingTaskType.class);
+        int reserved = settings.getInteractiveReserved();
+        boolean virtualThreads = useVirtualThreads(settings);
+        for (PendingTaskType taskType : PendingTaskType.values()) {
+            int limit = settings.getWorkerLimit(taskType.getSettingsKey());
+            if (virtualThreads) {
+                limit = Math.max(limit, settings.getMaxConcurrentRequests());
+            }
+            permits.put(taskType, new Semaphore(limit));
+            bulkPermits.put(taskType, new Semaphore(Math.max(1, limit - reserved)));
+        }
+        return new PendingTaskPermits(permits, bulkPermits);
+    }
+
+    /**
+     * The number of platform threads needed to run every task type at its limit
+     *
+     * @param settings settings holding the per-type limits
+     * @return total worker count
+     */
+    public static int getWorkerCount(PolySwarmMarketplaceSettings settings) {
+        int workers = 0;
+        for (PendingTaskType taskType : PendingTaskType.values()) {
+            workers += settings.getWorkerLimit(taskType.getSettingsKey());
+        }
+        return workers;
+    }
+}
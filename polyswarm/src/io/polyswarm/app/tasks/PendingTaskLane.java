@@ -0,0 +1,50 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+/**
+ * Priority lane of a PendingTask. Interactive tasks come from an analyst's one-off request and go ahead of bulk work,
+ * which keeps a share of the workers and is promoted once it has waited long enough.
+ */
+public enum PendingTaskLane {
+    INTERACTIVE,
+    BULK;
+
+    /**
+     * Parse a lane stored in the db, defaulting to INTERACTIVE for rows written before lanes existed
+     *
+     * @param name stored lane name
+     * @return lane
+     */
+    public static PendingTaskLane fromName(String name) {
+        if (name != null) {
+            for (PendingTaskLane lane : values()) {
+                if (lane.name().equals(name)) {
+                    return lane;
+                }
+            }
+        }
+        return INTERACTIVE;
+    }
+}
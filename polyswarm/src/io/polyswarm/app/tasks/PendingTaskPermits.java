@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Concurrency limits for pending tasks.
+ *
+ * Every task holds a permit for its PendingTaskType while it is in the pipeline. Bulk tasks must also hold a bulk
+ * permit, so some of each type's capacity stays free for interactive tasks. Bulk tasks that have waited long enough are
+ * promoted and skip the bulk permit.
+ *
+ * Permits cover the network work only: a task gives them back when it is handed to the blackboard writer.
+ */
+public class PendingTaskPermits {
+
+    private final Map<PendingTaskType, Semaphore> permits;
+    private final Map<PendingTaskType, Semaphore> bulkPermits;
+
+    PendingTaskPermits(Map<PendingTaskType, Semaphore> permits, Map<PendingTaskType, Semaphore> bulkPermits) {
+        this.permits = permits;
+        this.bulkPermits = bulkPermits;
+    }
+
+    /**
+     * Take the permits a task needs to enter the pipeline, without waiting
+     *
+     * @param scheduledTask task to start
+     * @param promoted true if a bulk task may use the capacity reserved for interactive tasks
+     * @return true if the permits were taken
+     */
+    public boolean tryAcquire(ScheduledPendingTask scheduledTask, boolean promoted) {
+        PendingTaskType taskType = scheduledTask.getTask().getTaskType();
+        boolean needsBulkPermit = scheduledTask.getTask().getLane() == PendingTaskLane.BULK && !promoted;
+        if (needsBulkPermit && !bulkPermits.get(taskType).tryAcquire()) {
+            return false;
+        }
+        if (!permits.get(taskType).tryAcquire()) {
+            if (needsBulkPermit) {
+                bulkPermits.get(taskType).release();
+            }
+            return false;
+        }
+        scheduledTask.setHoldsPermit(true);
+        scheduledTask.setHoldsBulkPermit(needsBulkPermit);
+        return true;
+    }
+
+    /**
+     * Give back the permits taken by tryAcquire. Does nothing if they were already given back.
+     *
+     * @param scheduledTask task leaving the pipeline
+     */
+    public void release(ScheduledPendingTask scheduledTask) {
+        if (!scheduledTask.holdsPermit()) {
+            return;
+        }
+        scheduledTask.setHoldsPermit(false);
+        PendingTaskType taskType = scheduledTask.getTask().getTaskType();
+        permits.get(taskType).release();
+        if (scheduledTask.holdsBulkPermit()) {
+            scheduledTask.setHoldsBulkPermit(false);
+            bulkPermits.get(taskType).release();
+        }
+    }
+}
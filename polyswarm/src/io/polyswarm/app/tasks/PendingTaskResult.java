@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.apiclient.v2.requests.utils.ArtifactInstance;
+import io.polyswarm.app.apiclient.v2.requests.utils.Tag;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Result of a finished PendingTask, passed from the poll stage through enrich to persist.
+ *
+ * Either holds the ArtifactInstance (and its tags, once enriched), marks the file as not found in PolySwarm, or marks
+ * the task as timed out by the reaper.
+ *
+ * Results are stored as JSON in the result outbox until they are in the blackboard.
+ */
+public class PendingTaskResult {
+
+    private final ArtifactInstance artifactInstance;
+    private final boolean timedOut;
+    private List<Tag> tags;
+
+    private PendingTaskResult(ArtifactInstance artifactInstance, boolean timedOut) {
+        this.artifactInstance = artifactInstance;
+        this.timedOut = timedOut;
+        this.tags = new ArrayList<>();
+    }
+
+    public static PendingTaskResult found(ArtifactInstance artifactInstance) {
+        return new PendingTaskResult(artifactInstance, false);
+    }
+
+    public static PendingTaskResult notFound() {
+        return new PendingTaskResult(null, false);
+    }
+
+    public static PendingTaskResult timedOut() {
+        return new PendingTaskResult(null, true);
+    }
+
+    public boolean isNotFound() {
+        return artifactInstance == null && !timedOut;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public ArtifactInstance getArtifactInstance() {
+        return artifactInstance;
+    }
+
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * @return this result as JSON, with the artifact instance as PolySwarm returned it
+     */
+    public String toJson() {
+        JSONObject json = new JSONObject();
+        json.put("timed_out", timedOut);
+        if (artifactInstance != null) {
+            json.put("artifact_instance", new JSONObject(artifactInstance.rawJson));
+        }
+        JSONArray tagNames = new JSONArray();
+        for (Tag tag : tags) {
+            tagNames.put(tag.name);
+        }
+        json.put("tags", tagNames);
+        return json.toString();
+    }
+
+    /**
+     * Read a result stored by toJson
+     *
+     * @param value JSON from toJson
+     * @return the result
+     *
+     * @throws JSONException if the JSON isn't a stored result
+     */
+    public static PendingTaskResult fromJson(String value) throws JSONException {
+        JSONObject json = new JSONObject(value);
+        JSONObject instanceJson = json.optJSONObject("artifact_instance");
+        ArtifactInstance artifactInstance = instanceJson == null ? null : new ArtifactInstance(instanceJson);
+        PendingTaskResult result = new PendingTaskResult(artifactInstance, json.getBoolean("timed_out"));
+        for (Object tagName : json.getJSONArray("tags")) {
+            result.tags.add(new Tag((String) tagName));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One stage of the pending task pipeline: a bounded queue drained by a fixed number of consumer threads, or by a
+ * dispatcher that runs every task on its own thread of a thread per task executor.
+ *
+ * Interactive tasks are added at the head of the queue, so they don't wait behind bulk work already in the stage.
+ *
+ * A full queue pushes back on whoever feeds it. Queue depth, active consumers and completed count are kept so a slow
+ * stage is easy to spot.
+ */
+public class PendingTaskStageQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(PendingTaskStageQueue.class.getName());
+    private static final long IDLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Work done by each consumer for every task taken from the queue
+     */
+    public interface StageWorker {
+
+        void process(ScheduledPendingTask scheduledTask) throws InterruptedException;
+
+        /**
+         * Background work of the stage, run on the consumer thread when it starts, after every task, and every second
+         * while no task comes. Must be cheap when there is nothing to do.
+         */
+        default void idle() {
+        }
+    }
+
+    private final PendingTaskStage stage;
+    private final BlockingDeque<ScheduledPendingTask> queue;
+    private final int threadBudget;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private long lastCompleted;
+    private long lastSampleNanos;
+
+    public PendingTaskStageQueue(PendingTaskStage stage, int capacity, int threadBudget) {
+        this.stage = stage;
+        this.queue = new LinkedBlockingDeque<>(capacity);
+        this.threadBudget = threadBudget;
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Start the consumers
+     *
+     * @param executor executor to run the consumers on
+     * @param worker work to do for each task
+     */
+    public void start(ExecutorService executor, StageWorker worker) {
+        for (int i = 0; i < threadBudget; i++) {
+            executor.execute(() -> consume(worker));
+        }
+    }
+
+    /**
+     * Start a dispatcher that runs every task on its own thread. Meant for a virtual thread per task executor, where
+     * the number of threads costs nothing and the worker bounds its own concurrency.
+     *
+     * @param executor thread per task executor to run the dispatcher and the tasks on
+     * @param worker work to do for each task
+     */
+    public void startPerTask(ExecutorService executor, StageWorker worker) {
+        executor.execute(() -> dispatch(executor, worker));
+    }
+
+    private void consume(StageWorker worker) {
+        try {
+            idle(worker);
+            while (!Thread.currentThread().isInterrupted()) {
+                ScheduledPendingTask scheduledTask = queue.poll(IDLE_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                if (scheduledTask != null) {
+                    active.incrementAndGet();
+                    process(worker, scheduledTask);
+                }
+                idle(worker);
+            }
+        } catch (InterruptedException ex) {
+            // shutting down
+        }
+    }
+
+    private void dispatch(ExecutorService executor, StageWorker worker) {
+        try {
+            idle(worker);
+            while (!Thread.currentThread().isInterrupted()) {
+                ScheduledPendingTask scheduledTask = queue.poll(IDLE_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                if (scheduledTask != null) {
+                    active.incrementAndGet();
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                process(worker, scheduledTask);
+                            } catch (InterruptedException ex) {
+                                // shutting down, the worker has handed the task back
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+                    } catch (RejectedExecutionException ex) {
+                        // shutting down, the task stays in the db for next time
+                        active.decrementAndGet();
+                        return;
+                    }
+                }
+                idle(worker);
+            }
+        } catch (InterruptedException ex) {
+            // shutting down
+        }
+    }
+
+    private void process(StageWorker worker, ScheduledPendingTask scheduledTask) throws InterruptedException {
+        try {
+            worker.process(scheduledTask);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.SEVERE, String.format("Unexpected exception in %s stage", stage), ex);
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+        }
+    }
+
+    private void idle(StageWorker worker) {
+        try {
+            worker.idle();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.SEVERE, String.format("Unexpected exception in %s stage background work", stage), ex);
+        }
+    }
+
+    /**
+     * Add a task without waiting
+     *
+     * @param scheduledTask task to add
+     * @return false if the queue is full
+     */
+    public boolean offer(ScheduledPendingTask scheduledTask) {
+        if (scheduledTask.getLane() == PendingTaskLane.INTERACTIVE) {
+            return queue.offerFirst(scheduledTask);
+        }
+        return queue.offerLast(scheduledTask);
+    }
+
+    /**
+     * Add a task, waiting while the queue is full
+     *
+     * @param scheduledTask task to add
+     */
+    public void put(ScheduledPendingTask scheduledTask) throws InterruptedException {
+        if (scheduledTask.getLane() == PendingTaskLane.INTERACTIVE) {
+            queue.putFirst(scheduledTask);
+        } else {
+            queue.putLast(scheduledTask);
+        }
+    }
+
+    /**
+     * Take up to maxTasks more tasks without waiting, for a consumer that processes tasks in batches. They count as
+     * completed by this stage.
+     *
+     * @param batch list to add the tasks to
+     * @param maxTasks most tasks to take
+     * @return number of tasks taken
+     */
+    public int drainTo(List<ScheduledPendingTask> batch, int maxTasks) {
+        int drained = queue.drainTo(batch, maxTasks);
+        completed.addAndGet(drained);
+        return drained;
+    }
+
+    /**
+     * Take a task, waiting up to the timeout for one, for a consumer that processes tasks in batches. It counts as
+     * completed by this stage.
+     *
+     * @param timeout how long to wait
+     * @param unit unit of the timeout
+     * @return the task, or null if none came
+     */
+    public ScheduledPendingTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        ScheduledPendingTask scheduledTask = queue.poll(timeout, unit);
+        if (scheduledTask != null) {
+            completed.incrementAndGet();
+        }
+        return scheduledTask;
+    }
+
+    public PendingTaskStage getStage() {
+        return stage;
+    }
+
+    public int getThreadBudget() {
+        return threadBudget;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Tasks completed per second since the last call
+     *
+     * @return throughput in tasks/s
+     */
+    public synchronized double sampleThroughput() {
+        long now = System.nanoTime();
+        long done = completed.get();
+        double seconds = (now - lastSampleNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        double rate = seconds > 0 ? (done - lastCompleted) / seconds : 0;
+        lastCompleted = done;
+        lastSampleNanos = now;
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(depth: %d, active: %d/%d, completed: %d)", stage, getQueueDepth(), getActiveCount(), threadBudget, getCompletedCount());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+
+/**
+ * The kinds of PendingTask, used to apply a separate concurrency limit to each.
+ */
+public enum PendingTaskType {
+    SUBMISSION(PolySwarmMarketplaceSettings.TASK_KEY_SUBMISSIONS),
+    RESCAN(PolySwarmMarketplaceSettings.TASK_KEY_RESCANS),
+    HASH_LOOKUP(PolySwarmMarketplaceSettings.TASK_KEY_HASH_LOOKUPS);
+
+    private final String settingsKey;
+
+    PendingTaskType(String settingsKey) {
+        this.settingsKey = settingsKey;
+    }
+
+    /**
+     * @return key of this type's settings in PolySwarmMarketplaceSettings
+     */
+    public String getSettingsKey() {
+        return settingsKey;
+    }
+}
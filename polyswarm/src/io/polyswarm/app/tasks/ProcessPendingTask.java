@@ -24,38 +24,162 @@
 package io.polyswarm.app.tasks;
 
 import io.polyswarm.app.apiclient.BadRequestException;
+import io.polyswarm.app.apiclient.ContentSpool;
+import io.polyswarm.app.apiclient.InFlightRequests;
 import io.polyswarm.app.apiclient.NotAuthorizedException;
 import io.polyswarm.app.apiclient.RateLimitException;
 import io.polyswarm.app.datamodel.PolySwarmDb;
 import io.polyswarm.app.datamodel.PolySwarmDbException;
+import io.polyswarm.app.optionspanel.PolySwarmMarketplaceSettings;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.SwingUtilities;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.netbeans.api.progress.ProgressHandle;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.TskCoreException;
 
 /**
  * Processes all Tasks in a background thread so the UI is not blocked during file & network IO.
  *
+ * The pending tasks are read from the db once, then kept in memory. New tasks are added with enqueue after they are
+ * written to the db, and the db is only written to after that. Every task has its own next-due time in a DelayQueue,
+ * and the scheduler thread sleeps until the next one comes due. Due tasks are fed into a pipeline of PendingTaskStages, each a bounded queue with
+ * its own threads, so a slow upload doesn't hold up status polls or blackboard writes. A full stage pushes back on the
+ * stage before it, and the scheduler delays tasks when the first stage is full. Each PendingTaskType also has a
+ * separate concurrency limit, and all API calls share one request limit. See PendingTaskExecutors.
+ *
+ * Tasks waiting for a permit are kept per PendingTaskLane and type, riskiest first by the RiskScorer priority given
+ * when they were added. Interactive tasks start first and have capacity reserved for them, while bulk tasks that have
+ * waited too long are promoted so they can't starve.
+ *
+ * Every submit or poll attempt is counted in the db. Tasks past their deadline or attempt limit are timed out by a
+ * periodic sweep, which writes a timed out comment for the file instead of polling it forever.
+ *
+ * Interactive tasks each get a ProgressHandle. Bulk tasks share one BulkJobProgress, with per-task detail on demand.
+ *
+ * Results are handed to the PERSIST stage, a single ResultWriter with a bounded queue, and the task's worker permit is
+ * given back right away, so case db contention doesn't hold up the network work.
+ *
+ * Tasks of the same type and hash (copies of the same file) are collapsed by a HashCollapseRegistry: the first one does
+ * the work, and the others subscribe to it and get its result written in the same blackboard batch. If the first task
+ * is cancelled or fails, its subscribers are scheduled again on their own.
  */
 public class ProcessPendingTask extends BackgroundTask {
 
     private static final Logger LOGGER = Logger.getLogger(ProcessPendingTask.class.getName());
+    private static final int STAGE_QUEUE_CAPACITY_PER_THREAD = 4;
+    private static final int MIN_STAGE_QUEUE_CAPACITY = 16;
+    private static final int MAX_BULK_JOB_DETAILS = 200;
+    private static final int FILE_NAME_QUERY_IDS = 500;
+    private static final long STATISTICS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long REAP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long MIN_LOAD_RETRY_MS = 2000;
+    private static final long MAX_LOAD_RETRY_MS = 60000;
+    // riskiest first, then the longest waiting
+    private static final Comparator<ScheduledPendingTask> WAITING_ORDER = Comparator.comparingInt(ScheduledPendingTask::getPriority).reversed()
+            .thenComparingLong(ScheduledPendingTask::getWaitingSinceNanos);
     private final PolySwarmDb dbInstance;
     private final Case autopsyCase;
-    private final HashMap<PendingTask, ProgressHandle> progressHandles;
+    private final File spoolDirectory;
+    private final long openedMillis;
+    private final Map<PendingTask, ProgressHandle> progressHandles;
+    private final Map<PendingTask, ScheduledPendingTask> scheduledTasks;
+    private final HashCollapseRegistry collapseRegistry;
+    private final DelayQueue<ScheduledPendingTask> dueTasks;
+    private final PendingTaskPermits workerPermits;
+    private final Semaphore requestPermits;
+    private final Map<PendingTaskLane, Map<PendingTaskType, Queue<ScheduledPendingTask>>> waitingTasks;
+    private final long bulkAgingMillis;
+    private final WindowLatencyModel latencyModel;
+    private final Map<PendingTaskStage, PendingTaskStageQueue> stages;
+    private final List<ExecutorService> stageExecutors;
+    private long lastStatisticsNanos;
+    private long lastReapNanos;
+    private final Map<PendingTaskType, Long> deadlineMillis;
+    private final int maxAttempts;
+    private final ResultWriter resultWriter;
+    private volatile boolean shutDown;
+    private BulkJobProgress bulkJob;
 
     public ProcessPendingTask(PolySwarmDb dbInstance, Case autopsyCase) {
         super();
         this.dbInstance = dbInstance;
         this.autopsyCase = autopsyCase;
-        progressHandles = new HashMap<>();
+        this.spoolDirectory = ContentSpool.getSpoolDirectory(autopsyCase);
+        this.openedMillis = System.currentTimeMillis();
+        progressHandles = new ConcurrentHashMap<>();
+        scheduledTasks = new HashMap<>();
+        collapseRegistry = new HashCollapseRegistry();
+        dueTasks = new DelayQueue<>();
+        waitingTasks = new EnumMap<>(PendingTaskLane.class);
+        for (PendingTaskLane lane : PendingTaskLane.values()) {
+            Map<PendingTaskType, Queue<ScheduledPendingTask>> laneTasks = new EnumMap<>(PendingTaskType.class);
+            for (PendingTaskType taskType : PendingTaskType.values()) {
+                laneTasks.put(taskType, new PriorityQueue<>(WAITING_ORDER));
+            }
+            waitingTasks.put(lane, laneTasks);
+        }
+        stages = new EnumMap<>(PendingTaskStage.class);
+        stageExecutors = new ArrayList<>();
+        lastStatisticsNanos = System.nanoTime();
+
+        PolySwarmMarketplaceSettings settings = new PolySwarmMarketplaceSettings();
+        workerPermits = PendingTaskExecutors.newWorkerPermits(settings);
+        requestPermits = PendingTaskExecutors.newRequestPermits(settings);
+        bulkAgingMillis = settings.getBulkAgingMillis();
+        latencyModel = new WindowLatencyModel(dbInstance, settings.getCommunity());
+        deadlineMillis = new EnumMap<>(PendingTaskType.class);
+        for (PendingTaskType taskType : PendingTaskType.values()) {
+            deadlineMillis.put(taskType, settings.getDeadlineMillis(taskType.getSettingsKey()));
+        }
+        maxAttempts = settings.getMaxAttempts();
+        lastReapNanos = System.nanoTime();
+        for (PendingTaskStage stage : PendingTaskStage.values()) {
+            int threadBudget = PendingTaskExecutors.getStageThreadBudget(stage, settings);
+            int capacity = Math.max(MIN_STAGE_QUEUE_CAPACITY, threadBudget * STAGE_QUEUE_CAPACITY_PER_THREAD);
+            stages.put(stage, new PendingTaskStageQueue(stage, capacity, threadBudget));
+        }
+        resultWriter = new ResultWriter(this, stages.get(PendingTaskStage.PERSIST),
+                TimeUnit.MILLISECONDS.toNanos(settings.getMaxPublicationDelayMillis()));
+        for (PendingTaskStageQueue stageQueue : stages.values()) {
+            PendingTaskStage stage = stageQueue.getStage();
+            stageExecutors.add(PendingTaskExecutors.startStage(stageQueue, new PendingTaskStageQueue.StageWorker() {
+                @Override
+                public void process(ScheduledPendingTask scheduledTask) throws InterruptedException {
+                    runStage(stage, scheduledTask);
+                }
+
+                @Override
+                public void idle() {
+                    if (stage == PendingTaskStage.PERSIST) {
+                        resultWriter.retryOutbox();
+                    }
+                }
+            }, settings));
+        }
     }
 
     public PolySwarmDb getDbInstance() {
@@ -66,67 +190,750 @@ public class ProcessPendingTask extends BackgroundTask {
         return autopsyCase;
     }
 
+    /**
+     * @return true once shutdown was called
+     */
+    boolean isShutDown() {
+        return shutDown;
+    }
+
+    /**
+     * @param stage pipeline stage
+     * @return the queue for that stage, for its depth and throughput
+     */
+    public PendingTaskStageQueue getStageQueue(PendingTaskStage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Stop all the stage threads and abort their requests. Does not wait, tasks are already in the db so nothing is
+     * lost; use awaitTermination before closing the db.
+     */
+    public void shutdown() {
+        shutDown = true;
+        for (ExecutorService executor : stageExecutors) {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            for (ScheduledPendingTask scheduledTask : scheduledTasks.values()) {
+                InFlightRequests.abort(scheduledTask);
+            }
+        }
+        for (PendingTask pendingTask : progressHandles.keySet()) {
+            finishProgressHandle(pendingTask);
+        }
+        synchronized (this) {
+            if (bulkJob != null) {
+                bulkJob.finish();
+                bulkJob = null;
+            }
+        }
+    }
+
+    /**
+     * Wait for the stage threads to stop after shutdown
+     *
+     * @param timeout how long to wait for each stage
+     * @param unit unit of timeout
+     * @return true if every stage stopped
+     *
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean terminated = true;
+        for (ExecutorService executor : stageExecutors) {
+            terminated &= executor.awaitTermination(timeout, unit);
+        }
+        return terminated;
+    }
+
+    /**
+     * Load the pending tasks once and clear what a previous session left in the spool, then feed tasks into the
+     * pipeline as they come due. Runs until interrupted.
+     */
     @Override
     public void run() {
         try {
-            // check db for any pending tasks
-            PolySwarmDb db = getDbInstance();
-
-            List<PendingTask> pendingList = new ArrayList<>();
-            pendingList.addAll(db.getPendingHashLookups());
-            pendingList.addAll(db.getPendingSubmissions());
-            pendingList.addAll(db.getPendingRescans());
-            LOGGER.log(Level.FINE, "Found {0} pending tasks. Starting processing...", pendingList.size());
-
-            for (PendingTask pendingTask : pendingList) {
-                try {
-                    if (!progressHandles.containsKey(pendingTask)) {
-                        LOGGER.log(Level.FINE, "Creating a new progressbar for {0}", pendingTask);
-                        ProgressHandle handle = pendingTask.getPendingTaskProgressHandle();
-                        handle.start();
-                        handle.switchToIndeterminate();
-                        progressHandles.put(pendingTask, handle);
+            loadTasksWithRetry();
+            ContentSpool.sweep(spoolDirectory, getPendingSubmissionIds(), openedMillis);
+            while (!Thread.currentThread().isInterrupted()) {
+                ScheduledPendingTask scheduledTask = dueTasks.poll(STATISTICS_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                if (scheduledTask != null) {
+                    dueTasks.add(scheduledTask);
+                }
+                // also runs on timeout, so waiting bulk tasks are promoted even when nothing else happens
+                reapStaleTasks();
+                dispatchDueTasks();
+                logStageStatistics();
+            }
+        } catch (InterruptedException ex) {
+            // shutting down
+        }
+    }
+
+    /**
+     * @return ids of the files with a pending submission
+     */
+    private Set<Long> getPendingSubmissionIds() {
+        Set<Long> abstractFileIds = new HashSet<>();
+        for (PendingTask pendingTask : getPendingTasks()) {
+            if (pendingTask.getTaskType() == PendingTaskType.SUBMISSION) {
+                abstractFileIds.add(pendingTask.getAbstractFileId());
+            }
+        }
+        return abstractFileIds;
+    }
+
+    /**
+     * Load the pending tasks, retrying with a backoff until it works. Nothing is scheduled before, so the persisted
+     * tasks aren't dropped for the session by one failed read.
+     */
+    private void loadTasksWithRetry() throws InterruptedException {
+        long retryMillis = MIN_LOAD_RETRY_MS;
+        while (true) {
+            try {
+                loadTasks();
+                return;
+            } catch (PolySwarmDbException ex) {
+                LOGGER.log(Level.SEVERE, String.format("Failed to get list of pending tasks from db, retrying in %d ms.", retryMillis), ex);
+            }
+            Thread.sleep(retryMillis);
+            retryMillis = Math.min(retryMillis * 2, MAX_LOAD_RETRY_MS);
+        }
+    }
+
+    /**
+     * Read the pending task tables into memory. After this the db is only written to.
+     */
+    private void loadTasks() throws PolySwarmDbException {
+        PolySwarmDb db = getDbInstance();
+
+        List<PendingTask> pendingList = new ArrayList<>();
+        pendingList.addAll(db.getPendingHashLookups());
+        pendingList.addAll(db.getPendingSubmissions());
+        pendingList.addAll(db.getPendingRescans());
+        LOGGER.log(Level.INFO, "Loaded {0} pending tasks.", pendingList.size());
+        loadFileNames(pendingList);
+        // tasks already submitted first, so copies of the same file collapse into them instead of submitting again
+        pendingList.sort(Comparator.comparing(pendingTask -> pendingTask.getFirstStage() == PendingTaskStage.SUBMIT));
+
+        for (PendingTask pendingTask : pendingList) {
+            enqueue(pendingTask);
+        }
+    }
+
+    /**
+     * Look up the file names of tasks read from the db, with one case db query per FILE_NAME_QUERY_IDS tasks, so the
+     * bulk job details never query the case db. Tasks keep a null name if the lookup fails.
+     */
+    private void loadFileNames(List<PendingTask> pendingList) {
+        Map<Long, String> fileNames = new HashMap<>();
+        try {
+            for (int start = 0; start < pendingList.size(); start += FILE_NAME_QUERY_IDS) {
+                StringJoiner fileIds = new StringJoiner(", ");
+                for (PendingTask pendingTask : pendingList.subList(start, Math.min(pendingList.size(), start + FILE_NAME_QUERY_IDS))) {
+                    fileIds.add(Long.toString(pendingTask.getAbstractFileId()));
+                }
+                for (AbstractFile abstractFile : autopsyCase.getSleuthkitCase().findAllFilesWhere(String.format("obj_id IN (%s)", fileIds))) { // NON-NLS
+                    fileNames.put(abstractFile.getId(), abstractFile.getName());
+                }
+            }
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.WARNING, "Failed to look up the file names of pending tasks.", ex);
+        }
+        for (PendingTask pendingTask : pendingList) {
+            pendingTask.setFileName(fileNames.get(pendingTask.getAbstractFileId()));
+        }
+    }
+
+    /**
+     * Add a task that is already in the db
+     *
+     * @param pendingTask new task
+     * @return false if the task was already pending
+     */
+    public synchronized boolean enqueue(PendingTask pendingTask) {
+        if (isPending(pendingTask)) {
+            return false;
+        }
+        bind(pendingTask);
+        schedule(pendingTask);
+        if (pendingTask.getLane() == PendingTaskLane.BULK) {
+            if (bulkJob == null) {
+                bulkJob = new BulkJobProgress(this::cancelBulkJob, new BulkJobDetailsAction(this::getBulkJobDetails));
+            }
+            bulkJob.taskAdded();
+        }
+        return true;
+    }
+
+    /**
+     * Tie a task to this processor's case, for the db and spool it uses
+     */
+    private void bind(PendingTask pendingTask) {
+        pendingTask.bind(dbInstance, spoolDirectory);
+    }
+
+    /**
+     * Subscribe a task to a running task with the same hash, or schedule it to do the work itself
+     *
+     * @param pendingTask task to schedule
+     */
+    private synchronized void schedule(PendingTask pendingTask) {
+        if (collapseRegistry.subscribe(pendingTask)) {
+            return;
+        }
+        ScheduledPendingTask scheduledTask = new ScheduledPendingTask(pendingTask);
+        scheduledTasks.put(pendingTask, scheduledTask);
+        collapseRegistry.lead(scheduledTask);
+        dueTasks.add(scheduledTask);
+    }
+
+    /**
+     * A task left memory: it no longer does the work for its hash, and its remaining subscribers are scheduled again
+     * on their own
+     */
+    private synchronized void leaderDone(ScheduledPendingTask scheduledTask) {
+        for (PendingTask subscriber : collapseRegistry.leaderDone(scheduledTask)) {
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * Remove the subscribers whose result was written with their leader's
+     */
+    void subscribersDone(ScheduledPendingTask scheduledTask, List<PendingTask> subscribers) {
+        for (PendingTask subscriber : subscribers) {
+            try {
+                if (!subscriber.isRemoved()) {
+                    subscriber.removeFromDB();
+                }
+            } catch (PolySwarmDbException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to remove finished task from db.", ex);
+            }
+            synchronized (this) {
+                if (collapseRegistry.unsubscribe(subscriber, scheduledTask)) {
+                    bulkTaskDone(subscriber.getLane());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return snapshot of the tasks waiting on a task's result
+     */
+    synchronized List<PendingTask> getSubscribers(ScheduledPendingTask scheduledTask) {
+        return scheduledTask.getSubscribers();
+    }
+
+    /**
+     * Count a bulk task that left memory towards the bulk job, ending the job after its last task
+     */
+    private synchronized void bulkTaskDone(PendingTaskLane lane) {
+        if (lane == PendingTaskLane.BULK && bulkJob != null && bulkJob.taskDone()) {
+            bulkJob = null;
+        }
+    }
+
+    /**
+     * Cancel every bulk task, off the calling thread since they are deleted from the db
+     *
+     * @return true, the cancel always starts
+     */
+    private boolean cancelBulkJob() {
+        CompletableFuture.runAsync(() -> {
+            List<PendingTask> bulkTasks = new ArrayList<>();
+            for (PendingTask pendingTask : getPendingTasks()) {
+                if (pendingTask.getLane() == PendingTaskLane.BULK) {
+                    bulkTasks.add(pendingTask);
+                }
+            }
+            cancel(bulkTasks);
+        });
+        return true;
+    }
+
+    /**
+     * @return one line per bulk task with its file and state, sorted by task and file name, and cut off after
+     * MAX_BULK_JOB_DETAILS lines
+     */
+    @NbBundle.Messages({"ProcessPendingTask.details.running=%s: running",
+        "ProcessPendingTask.details.waiting=%s: waiting for a worker",
+        "ProcessPendingTask.details.scheduled=%s: next try in %d s",
+        "ProcessPendingTask.details.collapsed=%s: waiting for an identical file",
+        "ProcessPendingTask.details.more=... and %d more"})
+    private synchronized List<String> getBulkJobDetails() {
+        List<String> details = new ArrayList<>();
+        for (ScheduledPendingTask scheduledTask : scheduledTasks.values()) {
+            if (scheduledTask.getLane() != PendingTaskLane.BULK) {
+                continue;
+            }
+            String name = getDetailsName(scheduledTask.getTask());
+            long delaySeconds = scheduledTask.getDelay(TimeUnit.SECONDS);
+            if (scheduledTask.isInFlight()) {
+                details.add(String.format(Bundle.ProcessPendingTask_details_running(), name));
+            } else if (delaySeconds <= 0) {
+                details.add(String.format(Bundle.ProcessPendingTask_details_waiting(), name));
+            } else {
+                details.add(String.format(Bundle.ProcessPendingTask_details_scheduled(), name, delaySeconds));
+            }
+        }
+        for (PendingTask subscriber : collapseRegistry.getSubscribedTasks()) {
+            if (subscriber.getLane() == PendingTaskLane.BULK) {
+                details.add(String.format(Bundle.ProcessPendingTask_details_collapsed(), getDetailsName(subscriber)));
+            }
+        }
+        Collections.sort(details);
+        if (details.size() > MAX_BULK_JOB_DETAILS) {
+            int more = details.size() - MAX_BULK_JOB_DETAILS;
+            details = new ArrayList<>(details.subList(0, MAX_BULK_JOB_DETAILS));
+            details.add(String.format(Bundle.ProcessPendingTask_details_more(), more));
+        }
+        return details;
+    }
+
+    /**
+     * @return the task and its file, for the bulk job details
+     */
+    @NbBundle.Messages({"ProcessPendingTask.details.name=%s %s (file %d)",
+        "ProcessPendingTask.details.unnamed=%s (file %d)"})
+    private static String getDetailsName(PendingTask pendingTask) {
+        String fileName = pendingTask.getFileName();
+        if (fileName == null) {
+            return String.format(Bundle.ProcessPendingTask_details_unnamed(), pendingTask.getHumanReadableName(), pendingTask.getAbstractFileId());
+        }
+        return String.format(Bundle.ProcessPendingTask_details_name(), pendingTask.getHumanReadableName(), fileName, pendingTask.getAbstractFileId());
+    }
+
+    /**
+     * @param pendingTask task to look for
+     * @return true if an equal task is pending
+     */
+    public synchronized boolean isPending(PendingTask pendingTask) {
+        return scheduledTasks.containsKey(pendingTask) || collapseRegistry.getLeader(pendingTask) != null;
+    }
+
+    /**
+     * @return a snapshot of the pending tasks
+     */
+    public synchronized List<PendingTask> getPendingTasks() {
+        List<PendingTask> pendingTasks = new ArrayList<>();
+        for (ScheduledPendingTask scheduledTask : scheduledTasks.values()) {
+            pendingTasks.add(scheduledTask.getTask());
+        }
+        pendingTasks.addAll(collapseRegistry.getSubscribedTasks());
+        return pendingTasks;
+    }
+
+    /**
+     * Cancel a task now: its row is deleted, it is dropped from memory and its request is aborted. A task in the
+     * pipeline gives up its worker as soon as the aborted request returns, and writes no result.
+     *
+     * @param pendingTask task to cancel
+     * @return false if the row could not be deleted
+     */
+    public boolean cancel(PendingTask pendingTask) {
+        bind(pendingTask);
+        ScheduledPendingTask scheduledTask;
+        synchronized (this) {
+            scheduledTask = scheduledTasks.get(pendingTask);
+        }
+        try {
+            // delete first, so the same task can't be added again before it is gone from memory
+            (scheduledTask == null ? pendingTask : scheduledTask.getTask()).removeFromDB();
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to remove cancelled task from db.", ex);
+            return false;
+        }
+        dropCancelled(pendingTask);
+        return true;
+    }
+
+    /**
+     * Cancel many pending tasks now, deleting them from the db in one transaction and aborting their requests.
+     *
+     * @param pendingTasks tasks to cancel
+     * @return number of tasks cancelled, 0 if they could not be removed from the db
+     */
+    public int cancel(List<PendingTask> pendingTasks) {
+        if (pendingTasks.isEmpty()) {
+            return 0;
+        }
+        List<PendingTask> currentTasks = new ArrayList<>();
+        synchronized (this) {
+            for (PendingTask pendingTask : pendingTasks) {
+                bind(pendingTask);
+                ScheduledPendingTask scheduledTask = scheduledTasks.get(pendingTask);
+                currentTasks.add(scheduledTask == null ? pendingTask : scheduledTask.getTask());
+            }
+        }
+        try {
+            dbInstance.deletePendingTasks(currentTasks);
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to remove cancelled tasks from db.", ex);
+            return 0;
+        }
+        for (PendingTask currentTask : currentTasks) {
+            if (currentTask.getTaskType() == PendingTaskType.SUBMISSION) {
+                ContentSpool.evict(spoolDirectory, currentTask.getAbstractFileId());
+            }
+            currentTask.markRemoved();
+        }
+        for (PendingTask pendingTask : pendingTasks) {
+            dropCancelled(pendingTask);
+        }
+        return pendingTasks.size();
+    }
+
+    /**
+     * Drop a task that was deleted from the db from memory, and abort its request
+     */
+    private void dropCancelled(PendingTask pendingTask) {
+        ScheduledPendingTask scheduledTask;
+        ScheduledPendingTask leader;
+        synchronized (this) {
+            scheduledTask = scheduledTasks.get(pendingTask);
+            leader = collapseRegistry.getLeader(pendingTask);
+        }
+        if (leader != null) {
+            // collapsed into another task, which carries on for its other files
+            synchronized (this) {
+                if (collapseRegistry.unsubscribe(pendingTask, leader)) {
+                    bulkTaskDone(pendingTask.getLane());
+                }
+            }
+        }
+        if (scheduledTask != null) {
+            synchronized (this) {
+                scheduledTask.cancel();
+                if (scheduledTasks.remove(pendingTask, scheduledTask)) {
+                    bulkTaskDone(scheduledTask.getLane());
+                    leaderDone(scheduledTask);
+                }
+                waitingTasks.get(scheduledTask.getLane()).get(pendingTask.getTaskType()).remove(scheduledTask);
+                dueTasks.remove(scheduledTask);
+            }
+            InFlightRequests.abort(scheduledTask);
+        }
+        finishProgressHandle(pendingTask);
+    }
+
+    /**
+     * Move every due task to the waiting queue of its lane and type, then start as many waiting tasks as the permits
+     * allow.
+     */
+    private synchronized void dispatchDueTasks() {
+        ScheduledPendingTask scheduledTask;
+        while ((scheduledTask = dueTasks.poll()) != null) {
+            scheduledTask.startWaiting();
+            waitingTasks.get(scheduledTask.getLane()).get(scheduledTask.getTask().getTaskType()).add(scheduledTask);
+        }
+        startWaitingTasks();
+    }
+
+    /**
+     * Start waiting tasks in priority order: bulk tasks that have waited past the aging limit first (these may use the
+     * capacity reserved for interactive tasks), then interactive tasks, then the remaining bulk tasks.
+     */
+    private synchronized void startWaitingTasks() {
+        for (Queue<ScheduledPendingTask> waiting : waitingTasks.get(PendingTaskLane.BULK).values()) {
+            ScheduledPendingTask head;
+            while ((head = waiting.peek()) != null && head.getWaitingMillis() >= bulkAgingMillis
+                    && workerPermits.tryAcquire(head, true)) {
+                start(waiting.poll());
+            }
+        }
+        for (PendingTaskLane lane : PendingTaskLane.values()) {
+            for (Queue<ScheduledPendingTask> waiting : waitingTasks.get(lane).values()) {
+                ScheduledPendingTask head;
+                while ((head = waiting.peek()) != null && workerPermits.tryAcquire(head, false)) {
+                    start(waiting.poll());
+                }
+            }
+        }
+    }
+
+    /**
+     * Feed a task that holds its permits into its first stage. Tasks whose first stage is full are delayed.
+     *
+     * @param scheduledTask task to start
+     */
+    private synchronized void start(ScheduledPendingTask scheduledTask) {
+        PendingTask pendingTask = scheduledTask.getTask();
+        scheduledTask.stopWaiting();
+        if (!scheduledTask.tryClaim()) {
+            // already in the pipeline, and rescheduled when handed back
+            workerPermits.release(scheduledTask);
+            return;
+        }
+
+        // cancelled tasks go straight to persist, which only removes them, and expired ones to record the time out
+        PendingTaskStage firstStage = scheduledTask.isCancelled() || scheduledTask.isExpired() ? PendingTaskStage.PERSIST : pendingTask.getFirstStage();
+        scheduledTask.setResult(scheduledTask.isExpired() ? PendingTaskResult.timedOut() : null);
+        startProgressHandle(pendingTask);
+        if (!stages.get(firstStage).offer(scheduledTask)) {
+            LOGGER.log(Level.FINE, "{0} stage is full, delaying {1}", new Object[]{firstStage, pendingTask});
+            scheduledTask.release();
+            workerPermits.release(scheduledTask);
+            scheduledTask.scheduleAfter(ScheduledPendingTask.MIN_POLL_INTERVAL_MS);
+            dueTasks.add(scheduledTask);
+        } else if (firstStage == PendingTaskStage.PERSIST) {
+            // no network work left
+            workerPermits.release(scheduledTask);
+        }
+    }
+
+    /**
+     * Runs on a stage thread. Does the stage's work, then moves the task on to the next stage or hands it back to the
+     * scheduler. API calls hold a request permit, which is given back before the task waits on the next stage, so a
+     * full stage can't hold up the calls it is waiting for.
+     *
+     * @param stage stage being run
+     * @param scheduledTask task taken from the stage queue
+     */
+    private void runStage(PendingTaskStage stage, ScheduledPendingTask scheduledTask) throws InterruptedException {
+        PendingTask pendingTask = scheduledTask.getTask();
+        if (shutDown) {
+            // the case is closing, leave the task in the db for next time
+            handBack(scheduledTask, false);
+            return;
+        }
+        if (scheduledTask.isCancelled() && stage != PendingTaskStage.PERSIST) {
+            handBack(scheduledTask, false);
+            return;
+        }
+        InFlightRequests.setOwner(scheduledTask);
+        try {
+            switch (stage) {
+                case SUBMIT:
+                    recordAttempt(scheduledTask);
+                    PendingTask submitted;
+                    requestPermits.acquire();
+                    try {
+                        submitted = pendingTask.submit(getAutopsyCase());
+                    } finally {
+                        requestPermits.release();
                     }
-                    if (pendingTask.process(getAutopsyCase())) {
-                        LOGGER.log(Level.FINE, "{0} finished", pendingTask);
-                        progressHandles.get(pendingTask).finish();
-                        progressHandles.remove(pendingTask);
+                    bind(submitted);
+                    submitted.setFileName(pendingTask.getFileName());
+                    scheduledTask.setTask(submitted);
+                    boolean probe = latencyModel.nextIsProbe(pendingTask.getTaskType());
+                    scheduledTask.markSubmitted(probe);
+                    // don't poll before the window is likely to have closed, unless measuring when that is
+                    handBack(scheduledTask, false, probe ? ScheduledPendingTask.MIN_POLL_INTERVAL_MS : latencyModel.getFirstPollDelayMillis(pendingTask.getTaskType()));
+                    return;
+                case POLL:
+                    recordAttempt(scheduledTask);
+                    PendingTaskResult result;
+                    requestPermits.acquire();
+                    try {
+                        result = pendingTask.poll(getAutopsyCase());
+                    } finally {
+                        requestPermits.release();
                     }
-                } catch (NotAuthorizedException ex) {
-                    LOGGER.log(Level.SEVERE, "Invalid API Key", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (RateLimitException ex) {
-                    LOGGER.log(Level.WARNING, "Exeeded rate limits, you need to purchase a larger package, or wait a moment before trying again.");
-                    SwingUtilities.invokeLater(new RateLimitDialogRunnable(pendingTask.getHumanReadableName()));
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (BadRequestException ex) {
-                    LOGGER.log(Level.SEVERE, "Bad Request", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (PolySwarmDbException ex) {
-                    LOGGER.log(Level.SEVERE, "Failed to update pending task in db.", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (TskCoreException ex) {
-                    LOGGER.log(Level.SEVERE, "Failed to get abstractFile from current case", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (IOException ex) {
-                    LOGGER.log(Level.SEVERE, "Failed to make request to PolySwarm", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                } catch (Exception ex) {
-                    LOGGER.log(Level.SEVERE, "Unexpected exception while processing task", ex);
-                    progressHandles.get(pendingTask).finish();
-                    progressHandles.remove(pendingTask);
-                }
+                    if (result == null) {
+                        scheduledTask.markWindowOpen();
+                        handBack(scheduledTask, false);
+                        return;
+                    }
+                    long latencyMillis = scheduledTask.getWindowCloseMillis();
+                    if (latencyMillis >= 0 && !result.isNotFound()) {
+                        latencyModel.record(pendingTask.getTaskType(), latencyMillis);
+                    }
+                    scheduledTask.setResult(result);
+                    forward(PendingTaskStage.ENRICH, scheduledTask);
+                    return;
+                case ENRICH:
+                    requestPermits.acquire();
+                    try {
+                        pendingTask.enrich(scheduledTask.getResult());
+                    } finally {
+                        requestPermits.release();
+                    }
+                    // the network work is done, let the next task start while this one waits for the writer
+                    releasePermit(scheduledTask);
+                    forward(PendingTaskStage.PERSIST, scheduledTask);
+                    return;
+                case PERSIST:
+                    resultWriter.writeResults(scheduledTask);
+                    return;
             }
-            LOGGER.log(Level.FINE, "Completed a pass on pending tasks.");
+        } catch (InterruptedException ex) {
+            handBack(scheduledTask, false);
+            throw ex;
+        } catch (RequestAbortedException ex) {
+            LOGGER.log(Level.FINE, "{0} aborted", pendingTask);
+            handBack(scheduledTask, false);
+        } catch (Exception ex) {
+            logFailure(pendingTask, ex);
+            finishProgressHandle(pendingTask);
+            // tasks that failed stay scheduled unless they were removed from the db
+            handBack(scheduledTask, false);
+        } finally {
+            InFlightRequests.clearOwner();
+        }
+    }
+
+    /**
+     * Give back a task's worker permit before it leaves the pipeline, so a waiting task can start
+     */
+    private synchronized void releasePermit(ScheduledPendingTask scheduledTask) {
+        workerPermits.release(scheduledTask);
+        startWaitingTasks();
+    }
 
+    /**
+     * Count a submit or poll attempt, in memory and in the db
+     */
+    private void recordAttempt(ScheduledPendingTask scheduledTask) {
+        int attempts = scheduledTask.recordAttempt();
+        try {
+            dbInstance.recordPendingTaskAttempt(scheduledTask.getTask(), attempts);
         } catch (PolySwarmDbException ex) {
-            LOGGER.log(Level.SEVERE, "Failed to get list of pending tasks from db.", ex);
+            LOGGER.log(Level.WARNING, "Failed to record pending task attempt.", ex);
+        }
+    }
+
+    /**
+     * Every REAP_INTERVAL_NANOS, expire the tasks past their deadline or attempt limit and make them due now, so they
+     * are timed out on the next dispatch. Tasks in the pipeline are checked again once they are handed back.
+     */
+    private synchronized void reapStaleTasks() {
+        long now = System.nanoTime();
+        if (now - lastReapNanos < REAP_INTERVAL_NANOS) {
+            return;
+        }
+        lastReapNanos = now;
+        for (ScheduledPendingTask scheduledTask : scheduledTasks.values()) {
+            if (scheduledTask.isInFlight() || scheduledTask.isExpired() || scheduledTask.isCancelled()) {
+                continue;
+            }
+            PendingTaskType taskType = scheduledTask.getTask().getTaskType();
+            if (scheduledTask.getAgeMillis() > deadlineMillis.get(taskType) || scheduledTask.getAttempts() >= maxAttempts) {
+                LOGGER.log(Level.INFO, "{0} timed out after {1} attempts", new Object[]{scheduledTask.getTask(), scheduledTask.getAttempts()});
+                scheduledTask.expire();
+                if (dueTasks.remove(scheduledTask)) {
+                    scheduledTask.scheduleNow();
+                    dueTasks.add(scheduledTask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a task to the next stage, waiting while that stage is full
+     */
+    private void forward(PendingTaskStage nextStage, ScheduledPendingTask scheduledTask) throws InterruptedException {
+        stages.get(nextStage).put(scheduledTask);
+    }
+
+    /**
+     * Return a task from the pipeline. Finished tasks and tasks removed from the db are dropped, cancelled tasks are
+     * made due now, and others are polled again after a backoff.
+     *
+     * @param scheduledTask task leaving the pipeline
+     * @param finished true if the task is done
+     */
+    void handBack(ScheduledPendingTask scheduledTask, boolean finished) {
+        handBack(scheduledTask, finished, -1);
+    }
+
+    /**
+     * Return a task from the pipeline, with the delay until its next poll
+     *
+     * @param scheduledTask task leaving the pipeline
+     * @param finished true if the task is done
+     * @param firstPollDelayMillis delay until the first poll after a submission, or -1 to back off
+     */
+    private void handBack(ScheduledPendingTask scheduledTask, boolean finished, long firstPollDelayMillis) {
+        PendingTask pendingTask = scheduledTask.getTask();
+        synchronized (this) {
+            scheduledTask.release();
+            scheduledTask.setResult(null);
+            if (finished || pendingTask.isRemoved()) {
+                // an equal task may have been added since this one was cancelled
+                if (scheduledTasks.remove(pendingTask, scheduledTask)) {
+                    bulkTaskDone(scheduledTask.getLane());
+                    leaderDone(scheduledTask);
+                }
+                finishProgressHandle(pendingTask);
+            } else if (scheduledTasks.get(pendingTask) == scheduledTask) {
+                if (scheduledTask.isCancelled()) {
+                    scheduledTask.scheduleNow();
+                } else if (firstPollDelayMillis >= 0) {
+                    scheduledTask.scheduleFirstPoll(firstPollDelayMillis);
+                } else {
+                    scheduledTask.scheduleBackoff();
+                }
+                dueTasks.add(scheduledTask);
+            }
+            workerPermits.release(scheduledTask);
+            // a permit is free, so a waiting task can start
+            startWaitingTasks();
+        }
+    }
+
+    void logFailure(PendingTask pendingTask, Exception ex) {
+        if (ex instanceof NotAuthorizedException) {
+            LOGGER.log(Level.SEVERE, "Invalid API Key", ex);
+        } else if (ex instanceof RateLimitException) {
+            LOGGER.log(Level.WARNING, "Exeeded rate limits, you need to purchase a larger package, or wait a moment before trying again.");
+            SwingUtilities.invokeLater(new RateLimitDialogRunnable(pendingTask.getHumanReadableName()));
+        } else if (ex instanceof BadRequestException) {
+            LOGGER.log(Level.SEVERE, "Bad Request", ex);
+        } else if (ex instanceof PolySwarmDbException) {
+            LOGGER.log(Level.SEVERE, "Failed to update pending task in db.", ex);
+        } else if (ex instanceof TskCoreException) {
+            LOGGER.log(Level.SEVERE, "Failed to get abstractFile from current case", ex);
+        } else if (ex instanceof IOException) {
+            LOGGER.log(Level.SEVERE, "Failed to make request to PolySwarm", ex);
+        } else {
+            LOGGER.log(Level.SEVERE, "Unexpected exception while processing task", ex);
+        }
+    }
+
+    /**
+     * Log queue depth and throughput of each stage every STATISTICS_INTERVAL_NANOS, while there is work
+     */
+    private void logStageStatistics() {
+        long now = System.nanoTime();
+        if (now - lastStatisticsNanos < STATISTICS_INTERVAL_NANOS) {
+            return;
+        }
+        lastStatisticsNanos = now;
+
+        StringBuilder message = new StringBuilder("PolySwarm pipeline:");
+        boolean busy = false;
+        for (PendingTaskStageQueue stageQueue : stages.values()) {
+            double throughput = stageQueue.sampleThroughput();
+            busy |= throughput > 0 || stageQueue.getQueueDepth() > 0 || stageQueue.getActiveCount() > 0;
+            message.append(String.format(" %s depth %d, active %d/%d, %.2f/s;", stageQueue.getStage(),
+                    stageQueue.getQueueDepth(), stageQueue.getActiveCount(), stageQueue.getThreadBudget(), throughput));
+        }
+        if (busy) {
+            LOGGER.log(Level.INFO, message.toString());
+        }
+    }
+
+    private void startProgressHandle(PendingTask pendingTask) {
+        if (pendingTask.getLane() == PendingTaskLane.BULK) {
+            // shown by the bulk job instead
+            return;
+        }
+        if (!progressHandles.containsKey(pendingTask)) {
+            LOGGER.log(Level.FINE, "Creating a new progressbar for {0}", pendingTask);
+            ProgressHandle handle = pendingTask.getPendingTaskProgressHandle(() -> cancel(pendingTask));
+            handle.start();
+            handle.switchToIndeterminate();
+            progressHandles.put(pendingTask, handle);
+        }
+        pendingTask.setProgressHandle(progressHandles.get(pendingTask));
+    }
+
+    void finishProgressHandle(PendingTask pendingTask) {
+        ProgressHandle handle = progressHandles.remove(pendingTask);
+        if (handle != null) {
+            handle.finish();
         }
     }
 
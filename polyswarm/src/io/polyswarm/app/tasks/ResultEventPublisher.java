@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.polyswarm.app.PolySwarmModule;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+
+/**
+ * Coalesces result notifications, so a batch of results completing together refreshes the result tree once instead
+ * of once per file.
+ *
+ * The first artifact published starts a short window. Every artifact published within that window is fired in a
+ * single ModuleDataEvent per artifact type when it closes.
+ */
+public final class ResultEventPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(ResultEventPublisher.class.getName());
+    static final long WINDOW_MILLIS = 500;
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("PolySwarm-Result-Events-Thread-%d").setDaemon(true).build());
+    private static final Object LOCK = new Object();
+    private static Map<BlackboardArtifact.Type, List<BlackboardArtifact>> pending = new LinkedHashMap<>();
+    private static boolean flushScheduled = false;
+
+    /**
+     * Only static methods.
+     */
+    private ResultEventPublisher() {
+    }
+
+    /**
+     * Queue a new or updated artifact, to be announced when the current window closes
+     *
+     * @param type type of the artifact
+     * @param artifact artifact to announce
+     */
+    public static void publish(BlackboardArtifact.Type type, BlackboardArtifact artifact) {
+        synchronized (LOCK) {
+            pending.computeIfAbsent(type, key -> new ArrayList<>()).add(artifact);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                EXECUTOR.schedule(ResultEventPublisher::flush, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Fire the events for everything queued so far. Called when the window closes, and on case change so nothing is
+     * held back.
+     */
+    public static void flush() {
+        Map<BlackboardArtifact.Type, List<BlackboardArtifact>> toFire;
+        synchronized (LOCK) {
+            toFire = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+
+        for (Map.Entry<BlackboardArtifact.Type, List<BlackboardArtifact>> entry : toFire.entrySet()) {
+            try {
+                IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(PolySwarmModule.getModuleName(), entry.getKey(), entry.getValue()));
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Failed to fire PolySwarm result event.", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.datamodel.PolySwarmDb;
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import io.polyswarm.app.datamodel.ResultOutboxEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONException;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Results waiting for their blackboard write, kept in the db so a finished result is never lost or fetched again.
+ *
+ * A result is added, and its pending tasks deleted, in one db transaction before the blackboard write, and the entry is
+ * deleted once the write committed. Entries left by a crash are written when the case opens, and entries left by a failed
+ * write are retried with a backoff, by the blackboard writer.
+ */
+final class ResultOutbox {
+
+    private static final Logger LOGGER = Logger.getLogger(ResultOutbox.class.getName());
+    static final long NO_ENTRY = -1;
+
+    /**
+     * Only static methods.
+     */
+    private ResultOutbox() {
+    }
+
+    /**
+     * Keep a result and delete the tasks it is for
+     *
+     * @param db module db
+     * @param pendingTasks tasks the result is for
+     * @param result enriched result
+     * @return id of the outbox entry
+     *
+     * @throws PolySwarmDbException
+     */
+    static long add(PolySwarmDb db, List<PendingTask> pendingTasks, PendingTaskResult result) throws PolySwarmDbException {
+        long id = db.newResultOutboxEntry(pendingTasks, result.toJson());
+        for (PendingTask pendingTask : pendingTasks) {
+            pendingTask.markRemoved();
+        }
+        return id;
+    }
+
+    /**
+     * Delete a result that is in the blackboard. If that fails the result is written again when the outbox is next
+     * recovered.
+     *
+     * @param db module db
+     * @param id id of the outbox entry
+     */
+    static void done(PolySwarmDb db, long id) {
+        try {
+            db.deleteResultOutboxEntry(id);
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.WARNING, "Failed to remove written result from the outbox.", ex);
+        }
+    }
+
+    /**
+     * Write the results left in the outbox to the blackboard. Results that still fail stay for the next try.
+     *
+     * @param autopsyCase open case
+     * @param db module db
+     * @return true if the outbox is empty now
+     */
+    static boolean recover(Case autopsyCase, PolySwarmDb db) {
+        List<ResultOutboxEntry> entries;
+        try {
+            entries = db.getResultOutboxEntries();
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to get results from the outbox.", ex);
+            return false;
+        }
+        if (entries.isEmpty()) {
+            return true;
+        }
+
+        List<ResultOutboxEntry> cleared = new ArrayList<>();
+        for (ResultOutboxEntry entry : entries) {
+            try {
+                BlackboardWrite write = PendingTask.prepareWrite(autopsyCase, entry.getAbstractFileIds(), PendingTaskResult.fromJson(entry.getResult()));
+                if (write != null) {
+                    write.commit(autopsyCase);
+                }
+                cleared.add(entry);
+            } catch (JSONException ex) {
+                // can never be written, keeping it would only fail again on every try
+                LOGGER.log(Level.SEVERE, String.format("Dropping unreadable result for %s: %s", entry, entry.getResult()), ex);
+                cleared.add(entry);
+            } catch (TskCoreException ex) {
+                LOGGER.log(Level.WARNING, String.format("Failed to write result for %s, it stays in the outbox.", entry), ex);
+            }
+        }
+        for (ResultOutboxEntry entry : cleared) {
+            done(db, entry.getId());
+        }
+        LOGGER.log(Level.INFO, "Cleared {0} of {1} results left in the outbox.", new Object[]{cleared.size(), entries.size()});
+        return cleared.size() == entries.size();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestManager;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The blackboard writer: the single consumer of the PERSIST stage of a ProcessPendingTask.
+ *
+ * It commits up to MAX_WRITE_BATCH queued results per transaction. Before the write, each result is moved into the
+ * result outbox together with the deletion of its pending rows, so a result whose write fails is retried from the
+ * outbox with a backoff instead of being fetched again. The writer also writes what a crash left in the outbox when it
+ * starts. If the outbox can't be written, the pending row is deleted only after the write committed, and a failed
+ * write is polled again.
+ *
+ * While Autopsy ingest runs, every write competes with the ingest modules for the case db, so the writer holds results
+ * back for up to the max publication delay and writes up to MAX_INGEST_WRITE_BATCH at once. Interactive results and
+ * the end of ingest end the wait.
+ *
+ * Only used from the writer thread.
+ */
+class ResultWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(ResultWriter.class.getName());
+    static final int MAX_WRITE_BATCH = 32;
+    static final int MAX_INGEST_WRITE_BATCH = 256;
+    private static final long INGEST_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_OUTBOX_RETRY_MS = 30000;
+    private static final long MAX_OUTBOX_RETRY_MS = 600000;
+    private final ProcessPendingTask processor;
+    private final PendingTaskStageQueue writeQueue;
+    private final long maxPublicationDelayNanos;
+    // starts by writing what is left in the outbox
+    private boolean outboxPending = true;
+    private long outboxRetryDueNanos = System.nanoTime();
+    private long outboxRetryMillis = MIN_OUTBOX_RETRY_MS;
+
+    /**
+     * @param processor processor the results belong to
+     * @param writeQueue queue of the PERSIST stage
+     * @param maxPublicationDelayNanos how long results may be held back while ingest runs
+     */
+    ResultWriter(ProcessPendingTask processor, PendingTaskStageQueue writeQueue, long maxPublicationDelayNanos) {
+        this.processor = processor;
+        this.writeQueue = writeQueue;
+        this.maxPublicationDelayNanos = maxPublicationDelayNanos;
+    }
+
+    /**
+     * A result on its way to the blackboard, with the tasks collapsed into it
+     */
+    private static class PreparedWrite {
+
+        private final ScheduledPendingTask scheduledTask;
+        private final List<PendingTask> subscribers;
+        private final long outboxId;
+        private BlackboardWrite write;
+
+        PreparedWrite(ScheduledPendingTask scheduledTask, List<PendingTask> subscribers, long outboxId) {
+            this.scheduledTask = scheduledTask;
+            this.subscribers = subscribers;
+            this.outboxId = outboxId;
+        }
+    }
+
+    /**
+     * Writes the given task's result together with the other results already queued for the writer, one transaction
+     * per batch of results for different files. While ingest runs, results are first collected into a larger batch.
+     *
+     * @param first task taken from the PERSIST stage
+     */
+    void writeResults(ScheduledPendingTask first) {
+        List<ScheduledPendingTask> batch = new ArrayList<>();
+        batch.add(first);
+        writeQueue.drainTo(batch, MAX_WRITE_BATCH - 1);
+        if (maxPublicationDelayNanos > 0 && IngestManager.getInstance().isIngestRunning()) {
+            collectDuringIngest(batch);
+        }
+
+        List<PreparedWrite> chunk = new ArrayList<>();
+        Set<Long> chunkFileIds = new HashSet<>();
+        for (ScheduledPendingTask scheduledTask : batch) {
+            PreparedWrite prepared = keepResult(scheduledTask);
+            try {
+                prepared.write = newBlackboardWrite(prepared);
+            } catch (TskCoreException ex) {
+                writeFailed(prepared, ex);
+                continue;
+            }
+            if (prepared.write != null) {
+                Set<Long> abstractFileIds = prepared.write.getAbstractFileIds();
+                if (!Collections.disjoint(chunkFileIds, abstractFileIds)) {
+                    // the same file twice in one transaction would not see its own artifact
+                    commitWrites(chunk);
+                    chunk.clear();
+                    chunkFileIds.clear();
+                }
+                chunkFileIds.addAll(abstractFileIds);
+            }
+            chunk.add(prepared);
+        }
+        commitWrites(chunk);
+    }
+
+    /**
+     * Keep taking results for the writer until the max publication delay has passed, the batch is full, an
+     * interactive result comes in, or ingest ends, so the case db sees fewer and larger writes while ingest runs.
+     *
+     * @param batch results taken so far, added to
+     */
+    private void collectDuringIngest(List<ScheduledPendingTask> batch) {
+        long deadline = System.nanoTime() + maxPublicationDelayNanos;
+        int checked = 0;
+        try {
+            while (batch.size() < MAX_INGEST_WRITE_BATCH && !processor.isShutDown()) {
+                for (; checked < batch.size(); checked++) {
+                    if (batch.get(checked).getLane() == PendingTaskLane.INTERACTIVE) {
+                        // someone is waiting on this one
+                        return;
+                    }
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !IngestManager.getInstance().isIngestRunning()) {
+                    return;
+                }
+                ScheduledPendingTask next = writeQueue.poll(Math.min(remaining, INGEST_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (next != null) {
+                    batch.add(next);
+                    writeQueue.drainTo(batch, MAX_INGEST_WRITE_BATCH - batch.size());
+                }
+            }
+        } catch (InterruptedException ex) {
+            // shutting down, write what was collected
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Move a task's result into the outbox, deleting the task and the tasks collapsed into it. A task cancelled after
+     * its result arrived has nothing to keep.
+     */
+    private PreparedWrite keepResult(ScheduledPendingTask scheduledTask) {
+        PendingTaskResult result = scheduledTask.getResult();
+        if (scheduledTask.isCancelled() || result == null) {
+            return new PreparedWrite(scheduledTask, Collections.<PendingTask>emptyList(), ResultOutbox.NO_ENTRY);
+        }
+        List<PendingTask> subscribers = processor.getSubscribers(scheduledTask);
+        List<PendingTask> pendingTasks = new ArrayList<>();
+        pendingTasks.add(scheduledTask.getTask());
+        pendingTasks.addAll(subscribers);
+        long outboxId;
+        try {
+            outboxId = ResultOutbox.add(processor.getDbInstance(), pendingTasks, result);
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.WARNING, "Failed to add result to the outbox, it is fetched again if its write fails.", ex);
+            outboxId = ResultOutbox.NO_ENTRY;
+        }
+        return new PreparedWrite(scheduledTask, subscribers, outboxId);
+    }
+
+    /**
+     * Build the write for a task's result, for its file and the files of the tasks collapsed into it. A task cancelled
+     * after its result arrived has nothing to write and is only removed.
+     */
+    private BlackboardWrite newBlackboardWrite(PreparedWrite prepared) throws TskCoreException {
+        ScheduledPendingTask scheduledTask = prepared.scheduledTask;
+        if (scheduledTask.isCancelled()) {
+            return null;
+        }
+        List<Long> subscriberFileIds = new ArrayList<>();
+        for (PendingTask subscriber : prepared.subscribers) {
+            subscriberFileIds.add(subscriber.getAbstractFileId());
+        }
+        return scheduledTask.getTask().prepareWrite(processor.getAutopsyCase(), scheduledTask.getResult(), subscriberFileIds);
+    }
+
+    /**
+     * Commit a batch of writes in one transaction, then remove their tasks from the db. If the batch fails, its writes
+     * are committed one at a time so one bad result doesn't hold back the others.
+     */
+    private void commitWrites(List<PreparedWrite> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<BlackboardWrite> writes = new ArrayList<>();
+        for (PreparedWrite prepared : chunk) {
+            if (prepared.write != null) {
+                writes.add(prepared.write);
+            }
+        }
+        try {
+            if (!writes.isEmpty()) {
+                BlackboardWrite.commit(processor.getAutopsyCase(), writes);
+            }
+        } catch (TskCoreException ex) {
+            if (chunk.size() > 1) {
+                LOGGER.log(Level.WARNING, "Failed to write a batch of results, writing them one at a time.", ex);
+                for (PreparedWrite prepared : chunk) {
+                    commitWrites(Collections.singletonList(prepared));
+                }
+            } else {
+                writeFailed(chunk.get(0), ex);
+            }
+            return;
+        }
+        for (PreparedWrite prepared : chunk) {
+            writeDone(prepared);
+        }
+    }
+
+    /**
+     * The result is in the blackboard: now its outbox entry or pending rows can go
+     */
+    private void writeDone(PreparedWrite prepared) {
+        ScheduledPendingTask scheduledTask = prepared.scheduledTask;
+        PendingTask pendingTask = scheduledTask.getTask();
+        if (prepared.outboxId != ResultOutbox.NO_ENTRY) {
+            ResultOutbox.done(processor.getDbInstance(), prepared.outboxId);
+        } else {
+            try {
+                pendingTask.removeFromDB();
+            } catch (PolySwarmDbException ex) {
+                processor.logFailure(pendingTask, ex);
+            }
+        }
+        processor.subscribersDone(scheduledTask, prepared.subscribers);
+        LOGGER.log(Level.FINE, "{0} finished for {1} files", new Object[]{pendingTask, prepared.subscribers.size() + 1});
+        processor.finishProgressHandle(pendingTask);
+        processor.handBack(scheduledTask, true);
+    }
+
+    /**
+     * Write the results left in the outbox once they are due, backing off while they keep failing.
+     */
+    void retryOutbox() {
+        if (!outboxPending || System.nanoTime() - outboxRetryDueNanos < 0) {
+            return;
+        }
+        if (ResultOutbox.recover(processor.getAutopsyCase(), processor.getDbInstance())) {
+            outboxPending = false;
+            outboxRetryMillis = MIN_OUTBOX_RETRY_MS;
+        } else {
+            outboxRetryDueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(outboxRetryMillis);
+            outboxRetryMillis = Math.min(outboxRetryMillis * 2, MAX_OUTBOX_RETRY_MS);
+        }
+    }
+
+    /**
+     * The result couldn't be written. A result in the outbox is retried from there, otherwise the row stays and the task
+     * is polled again after a backoff.
+     */
+    private void writeFailed(PreparedWrite prepared, Exception ex) {
+        ScheduledPendingTask scheduledTask = prepared.scheduledTask;
+        processor.logFailure(scheduledTask.getTask(), ex);
+        processor.finishProgressHandle(scheduledTask.getTask());
+        if (prepared.outboxId != ResultOutbox.NO_ENTRY) {
+            LOGGER.log(Level.WARNING, "Result for {0} stays in the outbox, it is written again later.", scheduledTask.getTask());
+            if (!outboxPending) {
+                outboxPending = true;
+                outboxRetryDueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(outboxRetryMillis);
+            }
+            processor.subscribersDone(scheduledTask, prepared.subscribers);
+            processor.handBack(scheduledTask, true);
+        } else {
+            processor.handBack(scheduledTask, false);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Scores how likely a file is to be malicious from cheap local signals, so the riskiest files are scanned first.
+ *
+ * Signals: executable or script MIME type, an extension that doesn't match the content, an executable header (MZ, ELF,
+ * Mach-O), and a location users can write to. Higher is riskier.
+ */
+public final class RiskScorer {
+
+    private static final Logger LOGGER = Logger.getLogger(RiskScorer.class.getName());
+    public static final int MAX_SCORE = 100;
+    private static final int EXECUTABLE_MIME_SCORE = 35;
+    private static final int CONTAINER_MIME_SCORE = 15;
+    private static final int EXTENSION_MISMATCH_SCORE = 25;
+    private static final int EXECUTABLE_HEADER_SCORE = 25;
+    private static final int USER_WRITABLE_PATH_SCORE = 15;
+
+    private static final Set<String> EXECUTABLE_MIME_TYPES = new HashSet<>(Arrays.asList(
+            "application/x-dosexec", "application/x-msdownload", "application/x-executable", "application/x-sharedlib",
+            "application/x-mach-binary", "application/x-elf", "application/java-archive", "application/x-msi",
+            "application/x-sh", "application/x-bat", "text/x-msdos-batch", "application/x-powershell",
+            "text/x-python", "application/javascript", "text/javascript", "application/x-ms-shortcut",
+            "application/hta", "text/vbscript")); // NON-NLS
+    private static final Set<String> CONTAINER_MIME_TYPES = new HashSet<>(Arrays.asList(
+            "application/zip", "application/x-rar-compressed", "application/x-7z-compressed", "application/x-iso9660-image",
+            "application/pdf", "application/msword", "application/vnd.ms-excel", "application/vnd.ms-powerpoint",
+            "application/vnd.ms-office", "application/rtf")); // NON-NLS
+    private static final Set<String> EXECUTABLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "exe", "dll", "sys", "scr", "com", "cpl", "ocx", "drv", "efi", "so", "dylib", "bin", "elf", "o", "ko", "")); // NON-NLS
+    private static final String[] USER_WRITABLE_PATHS = {"/users/", "/home/", "/appdata/", "/temp/", "/tmp/",
+        "/downloads/", "/programdata/", "/$recycle.bin/", "/private/var/folders/"}; // NON-NLS
+
+    /**
+     * Only static methods.
+     */
+    private RiskScorer() {
+    }
+
+    /**
+     * Score a file. Signals that can't be read count as absent.
+     *
+     * @param abstractFile file to score
+     * @return score from 0 to MAX_SCORE
+     */
+    public static int score(AbstractFile abstractFile) {
+        if (abstractFile == null) {
+            return 0;
+        }
+        int score = 0;
+        String mimeType = abstractFile.getMIMEType();
+        if (mimeType != null) {
+            mimeType = mimeType.toLowerCase(Locale.ROOT);
+            if (EXECUTABLE_MIME_TYPES.contains(mimeType)) {
+                score += EXECUTABLE_MIME_SCORE;
+            } else if (CONTAINER_MIME_TYPES.contains(mimeType)) {
+                score += CONTAINER_MIME_SCORE;
+            }
+        }
+
+        boolean executableHeader = hasExecutableHeader(abstractFile);
+        if (executableHeader) {
+            score += EXECUTABLE_HEADER_SCORE;
+        }
+        if (hasExtensionMismatch(abstractFile, executableHeader)) {
+            score += EXTENSION_MISMATCH_SCORE;
+        }
+
+        String parentPath = abstractFile.getParentPath();
+        if (parentPath != null) {
+            parentPath = parentPath.toLowerCase(Locale.ROOT);
+            for (String userPath : USER_WRITABLE_PATHS) {
+                if (parentPath.contains(userPath)) {
+                    score += USER_WRITABLE_PATH_SCORE;
+                    break;
+                }
+            }
+        }
+        return Math.min(MAX_SCORE, score);
+    }
+
+    /**
+     * Check the first bytes for a PE (MZ), ELF or Mach-O header
+     */
+    private static boolean hasExecutableHeader(AbstractFile abstractFile) {
+        byte[] header = new byte[4];
+        try {
+            if (abstractFile.getSize() < header.length || abstractFile.read(header, 0, header.length) < header.length) {
+                return false;
+            }
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.FINE, "Could not read file header.", ex);
+            return false;
+        }
+        int magic = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+        return (header[0] == 'M' && header[1] == 'Z')
+                || magic == 0x7f454c46 // ELF
+                || magic == 0xfeedface || magic == 0xfeedfacf || magic == 0xcefaedfe || magic == 0xcffaedfe; // Mach-O
+    }
+
+    /**
+     * Either Autopsy's extension mismatch module flagged the file, or it has an executable header behind a
+     * non-executable extension
+     */
+    private static boolean hasExtensionMismatch(AbstractFile abstractFile, boolean executableHeader) {
+        String extension = abstractFile.getNameExtension();
+        if (executableHeader && extension != null && !EXECUTABLE_EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        try {
+            return abstractFile.getArtifactsCount(BlackboardArtifact.ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED) > 0;
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.FINE, "Could not check for extension mismatch.", ex);
+            return false;
+        }
+    }
+}
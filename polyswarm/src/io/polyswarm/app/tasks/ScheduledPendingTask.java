@@ -0,0 +1,330 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A PendingTask with its own next-due time, for use in a DelayQueue.
+ *
+ * Each time a poll finds the task still running, the next poll is MIN_POLL_INTERVAL_MS later for the first TIGHT_POLLS
+ * polls, and after that the delay doubles, up to MAX_POLL_INTERVAL_MS.
+ *
+ * A worker must claim the task before processing it, so the same task is never processed by two workers at once.
+ *
+ * Tasks with the same hash subscribe to the first one, and get its result instead of doing the work again. The
+ * subscribers are only touched under the ProcessPendingTask lock.
+ */
+public class ScheduledPendingTask implements Delayed {
+
+    static final long MIN_POLL_INTERVAL_MS = 2000;
+    static final long MAX_POLL_INTERVAL_MS = 60000;
+    static final int TIGHT_POLLS = 3;
+
+    private volatile PendingTask task;
+    private volatile PendingTaskResult result;
+    private volatile long dueNanos;
+    private int pollCount;
+    private volatile boolean cancelled;
+    private volatile boolean holdsPermit;
+    private volatile boolean holdsBulkPermit;
+    private long waitingSinceNanos;
+    private volatile long submittedAtNanos;
+    private volatile long lastOpenPollNanos;
+    private volatile boolean probe;
+    private final long createdAtMillis;
+    private final int priority;
+    private final AtomicInteger attempts;
+    private volatile boolean expired;
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    private final List<PendingTask> subscribers = new ArrayList<>();
+
+    public ScheduledPendingTask(PendingTask task) {
+        this.task = task;
+        this.dueNanos = System.nanoTime();
+        this.createdAtMillis = task.getCreatedAtMillis() > 0 ? task.getCreatedAtMillis() : System.currentTimeMillis();
+        this.attempts = new AtomicInteger(task.getAttempts());
+        this.priority = task.getPriority();
+    }
+
+    /**
+     * @return risk score the task was added with, higher starts first
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public PendingTask getTask() {
+        return task;
+    }
+
+    /**
+     * Swap in a newer copy of the same task (for example, read back from the db after the submission id was set)
+     *
+     * @param task updated task
+     */
+    public void setTask(PendingTask task) {
+        this.task = task;
+    }
+
+    /**
+     * @return the result carried between pipeline stages, or null
+     */
+    public PendingTaskResult getResult() {
+        return result;
+    }
+
+    public void setResult(PendingTaskResult result) {
+        this.result = result;
+    }
+
+    /**
+     * @param subscriber task waiting for this task's result
+     */
+    void addSubscriber(PendingTask subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    void removeSubscriber(PendingTask subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * @return a snapshot of the tasks waiting for this task's result
+     */
+    List<PendingTask> getSubscribers() {
+        return new ArrayList<>(subscribers);
+    }
+
+    /**
+     * Remove and return all the subscribers, when this task leaves without a result for them
+     */
+    List<PendingTask> takeSubscribers() {
+        List<PendingTask> taken = new ArrayList<>(subscribers);
+        subscribers.clear();
+        return taken;
+    }
+
+    /**
+     * Mark the task as cancelled by the user, so a pipeline stage still holding it drops it without a result.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Count a submit or poll attempt
+     *
+     * @return attempts so far, including this one
+     */
+    public int recordAttempt() {
+        return attempts.incrementAndGet();
+    }
+
+    public int getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * @return ms since the task was added
+     */
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - createdAtMillis;
+    }
+
+    /**
+     * Mark the task as past its deadline. It is timed out the next time it is dispatched.
+     */
+    public void expire() {
+        expired = true;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * @return true if the task was cancelled here or in the db
+     */
+    public boolean isCancelled() {
+        return cancelled || task.isCancelled();
+    }
+
+    /**
+     * @return the priority lane of the task
+     */
+    public PendingTaskLane getLane() {
+        return task.getLane();
+    }
+
+    boolean holdsPermit() {
+        return holdsPermit;
+    }
+
+    void setHoldsPermit(boolean holdsPermit) {
+        this.holdsPermit = holdsPermit;
+    }
+
+    boolean holdsBulkPermit() {
+        return holdsBulkPermit;
+    }
+
+    void setHoldsBulkPermit(boolean holdsBulkPermit) {
+        this.holdsBulkPermit = holdsBulkPermit;
+    }
+
+    /**
+     * Note when the task started waiting for a permit, if it wasn't already waiting
+     */
+    void startWaiting() {
+        if (waitingSinceNanos == 0) {
+            waitingSinceNanos = System.nanoTime();
+        }
+    }
+
+    void stopWaiting() {
+        waitingSinceNanos = 0;
+    }
+
+    long getWaitingSinceNanos() {
+        return waitingSinceNanos;
+    }
+
+    /**
+     * @return how long the task has been waiting for a permit
+     */
+    long getWaitingMillis() {
+        return waitingSinceNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitingSinceNanos);
+    }
+
+    /**
+     * Claim the task for processing.
+     *
+     * @return true if the caller now owns the task, false if another worker already does
+     */
+    public boolean tryClaim() {
+        return inFlight.compareAndSet(false, true);
+    }
+
+    /**
+     * Give up the claim once processing is done
+     */
+    public void release() {
+        inFlight.set(false);
+    }
+
+    public boolean isInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Make the task due immediately, and restart the backoff.
+     */
+    public void scheduleNow() {
+        pollCount = 0;
+        dueNanos = System.nanoTime();
+    }
+
+    /**
+     * Schedule the first status poll after a submission, and restart the backoff so later polls are tight.
+     *
+     * @param delayMillis delay until the first poll
+     */
+    public void scheduleFirstPoll(long delayMillis) {
+        pollCount = 0;
+        scheduleAfter(delayMillis);
+    }
+
+    /**
+     * Note that the request was just submitted
+     *
+     * @param probe true if this task measures how long its window takes to close
+     */
+    public void markSubmitted(boolean probe) {
+        this.submittedAtNanos = System.nanoTime();
+        this.lastOpenPollNanos = 0;
+        this.probe = probe;
+    }
+
+    /**
+     * Note that a poll just found the window still open
+     */
+    public void markWindowOpen() {
+        lastOpenPollNanos = System.nanoTime();
+    }
+
+    /**
+     * Estimate when the window closed, once a poll found it closed. Only probes that saw the window open know: the
+     * close is between that poll and this one, and the midpoint is taken.
+     *
+     * @return ms from submission to window closed, or -1 if unknown
+     */
+    public long getWindowCloseMillis() {
+        long submitted = submittedAtNanos;
+        long lastOpen = lastOpenPollNanos;
+        if (!probe || submitted == 0 || lastOpen == 0) {
+            return -1;
+        }
+        long closedBy = System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(lastOpen + (closedBy - lastOpen) / 2 - submitted);
+    }
+
+    /**
+     * Make the task due after the given delay, without touching the backoff.
+     *
+     * @param delayMillis delay until the task is due
+     */
+    public void scheduleAfter(long delayMillis) {
+        dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * Schedule the next poll with exponential backoff.
+     */
+    public void scheduleBackoff() {
+        long delay = MIN_POLL_INTERVAL_MS << Math.min(Math.max(0, pollCount - TIGHT_POLLS), 16);
+        pollCount++;
+        scheduleAfter(Math.min(delay, MAX_POLL_INTERVAL_MS));
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScheduledPendingTask(%s, due in %d ms)", task, getDelay(TimeUnit.MILLISECONDS));
+    }
+}
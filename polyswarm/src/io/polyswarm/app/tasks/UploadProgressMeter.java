@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.apiclient.UploadProgressListener;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.util.NbBundle;
+
+/**
+ * Drives a determinate ProgressHandle from upload byte counts, showing bytes sent, current rate and ETA.
+ *
+ * Timing starts with the first byte written, so connecting and reading the content up front don't count against the
+ * rate.
+ */
+public class UploadProgressMeter implements UploadProgressListener {
+
+    private static final int WORK_UNITS = 1000;
+    private static final double RATE_SMOOTHING = 0.3;
+    private static final double BYTES_PER_MEGABYTE = 1024d * 1024d;
+
+    private final ProgressHandle progressHandle;
+    private long startNanos;
+    private boolean started;
+    private long lastBytes;
+    private long lastNanos;
+    private double bytesPerSecond;
+    private long bytesSent;
+    private long finishedNanos;
+    private boolean determinate;
+
+    public UploadProgressMeter(ProgressHandle progressHandle) {
+        this.progressHandle = progressHandle;
+    }
+
+    @Override
+    public synchronized void uploadStarted() {
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+        finishedNanos = startNanos;
+        started = true;
+    }
+
+    @Override
+    @NbBundle.Messages({"UploadProgressMeter.progress.message=Uploading %.1f of %.1f MB, %.1f MB/s, %s remaining"})
+    public synchronized void uploadProgress(long bytesSent, long totalBytes) {
+        if (!started) {
+            uploadStarted();
+        }
+        long now = System.nanoTime();
+        double intervalSeconds = (now - lastNanos) / 1e9;
+        if (intervalSeconds > 0) {
+            double intervalRate = (bytesSent - lastBytes) / intervalSeconds;
+            bytesPerSecond = bytesPerSecond == 0 ? intervalRate : RATE_SMOOTHING * intervalRate + (1 - RATE_SMOOTHING) * bytesPerSecond;
+        }
+        lastBytes = bytesSent;
+        lastNanos = now;
+        this.bytesSent = bytesSent;
+        finishedNanos = now;
+
+        if (progressHandle == null || totalBytes <= 0) {
+            return;
+        }
+        if (!determinate) {
+            progressHandle.switchToDeterminate(WORK_UNITS);
+            determinate = true;
+        }
+        int workDone = (int) Math.min(WORK_UNITS, bytesSent * WORK_UNITS / totalBytes);
+        progressHandle.progress(String.format(Bundle.UploadProgressMeter_progress_message(),
+                bytesSent / BYTES_PER_MEGABYTE, totalBytes / BYTES_PER_MEGABYTE, bytesPerSecond / BYTES_PER_MEGABYTE,
+                formatEta(totalBytes - bytesSent)), workDone);
+    }
+
+    /**
+     * Put the handle back into indeterminate mode once the upload is done.
+     */
+    public synchronized void finish() {
+        if (progressHandle != null && determinate) {
+            progressHandle.switchToIndeterminate();
+            determinate = false;
+        }
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getElapsedMillis() {
+        return started ? Math.max(0, finishedNanos - startNanos) / 1000000 : 0;
+    }
+
+    /**
+     * @return average upload rate over the whole upload, in bytes per second
+     */
+    public synchronized double getAverageBytesPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : bytesSent * 1000d / elapsedMillis;
+    }
+
+    private String formatEta(long remainingBytes) {
+        if (bytesPerSecond <= 0) {
+            return "--:--";
+        }
+        long seconds = (long) (remainingBytes / bytesPerSecond);
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+}
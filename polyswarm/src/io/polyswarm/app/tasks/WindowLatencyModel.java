@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 PolySwarm PTE. LTD.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.polyswarm.app.tasks;
+
+import io.polyswarm.app.datamodel.PolySwarmDb;
+import io.polyswarm.app.datamodel.PolySwarmDbException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Learns how long scan windows take to close, per PendingTaskType, for one community.
+ *
+ * Keeps the most recent latencies from submission to windowClosed, seeded from the db the first time a type is used.
+ * The first status poll is scheduled at a high percentile of those, since polling before then is mostly wasted.
+ *
+ * The API doesn't say when a window closed, and a poll that finds it closed only bounds the latency from above. So
+ * latencies are learned from probes: one submission in PROBE_EVERY (and every submission until MIN_SAMPLES are known)
+ * polls tightly from the start, and records the close time it bracketed between a poll that saw the window open and
+ * the poll that saw it closed. Learning from the delayed first polls would only ever push the delay up.
+ */
+public class WindowLatencyModel {
+
+    private static final Logger LOGGER = Logger.getLogger(WindowLatencyModel.class.getName());
+    private static final int MAX_SAMPLES = 200;
+    private static final int MIN_SAMPLES = 5;
+    private static final double FIRST_POLL_PERCENTILE = 0.9;
+    private static final long MAX_FIRST_POLL_DELAY_MS = 600000;
+    static final int PROBE_EVERY = 10;
+
+    private final PolySwarmDb dbInstance;
+    private final String community;
+    private final Map<PendingTaskType, Deque<Long>> samples;
+    private final Map<PendingTaskType, Integer> submissions;
+
+    public WindowLatencyModel(PolySwarmDb dbInstance, String community) {
+        this.dbInstance = dbInstance;
+        this.community = community;
+        this.samples = new EnumMap<>(PendingTaskType.class);
+        this.submissions = new EnumMap<>(PendingTaskType.class);
+    }
+
+    /**
+     * Decide if the next submission of a type probes the window latency
+     *
+     * @param taskType type of request
+     * @return true if the submission should poll tightly and record its latency
+     */
+    public synchronized boolean nextIsProbe(PendingTaskType taskType) {
+        int count = submissions.getOrDefault(taskType, 0);
+        submissions.put(taskType, count + 1);
+        return getSamples(taskType).size() < MIN_SAMPLES || count % PROBE_EVERY == 0;
+    }
+
+    /**
+     * Record a latency bracketed by a probe, in memory and in the db
+     *
+     * @param taskType type of request
+     * @param latencyMillis time from submission to window closed
+     */
+    public void record(PendingTaskType taskType, long latencyMillis) {
+        synchronized (this) {
+            Deque<Long> typeSamples = getSamples(taskType);
+            typeSamples.addFirst(latencyMillis);
+            while (typeSamples.size() > MAX_SAMPLES) {
+                typeSamples.removeLast();
+            }
+        }
+        try {
+            dbInstance.newWindowLatency(taskType.name(), community, latencyMillis);
+        } catch (PolySwarmDbException ex) {
+            LOGGER.log(Level.WARNING, "Failed to record window latency.", ex);
+        }
+    }
+
+    /**
+     * How long to wait after submitting before the first status poll
+     *
+     * @param taskType type of request
+     * @return delay in ms, or the minimum poll interval until enough latencies have been seen
+     */
+    public synchronized long getFirstPollDelayMillis(PendingTaskType taskType) {
+        Deque<Long> typeSamples = getSamples(taskType);
+        if (typeSamples.size() < MIN_SAMPLES) {
+            return ScheduledPendingTask.MIN_POLL_INTERVAL_MS;
+        }
+        List<Long> sorted = new ArrayList<>(typeSamples);
+        Collections.sort(sorted);
+        long percentile = sorted.get((int) Math.min(sorted.size() - 1, Math.floor(sorted.size() * FIRST_POLL_PERCENTILE)));
+        return Math.max(ScheduledPendingTask.MIN_POLL_INTERVAL_MS, Math.min(percentile, MAX_FIRST_POLL_DELAY_MS));
+    }
+
+    private Deque<Long> getSamples(PendingTaskType taskType) {
+        Deque<Long> typeSamples = samples.get(taskType);
+        if (typeSamples == null) {
+            typeSamples = new ArrayDeque<>();
+            try {
+                typeSamples.addAll(dbInstance.getWindowLatencies(taskType.name(), community, MAX_SAMPLES));
+            } catch (PolySwarmDbException ex) {
+                LOGGER.log(Level.WARNING, "Failed to load window latencies.", ex);
+            }
+            samples.put(taskType, typeSamples);
+        }
+        return typeSamples;
+    }
+}